@@ -15,8 +15,10 @@
  */
 package com.github.liaochong.myexcel.core;
 
+import com.github.liaochong.myexcel.core.parser.CompactTr;
 import com.github.liaochong.myexcel.core.parser.ContentTypeEnum;
 import com.github.liaochong.myexcel.core.parser.HtmlTableParser;
+import com.github.liaochong.myexcel.core.parser.SpanOccupancy;
 import com.github.liaochong.myexcel.core.parser.Td;
 import com.github.liaochong.myexcel.core.parser.Tr;
 import com.github.liaochong.myexcel.core.strategy.WidthStrategy;
@@ -63,7 +65,10 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -76,6 +81,10 @@ import java.util.Objects;
  * @version 1.0
  */
 public abstract class AbstractExcelFactory implements ExcelFactory {
+    /**
+     * 默认行高
+     */
+    private static final float DEFAULT_ROW_HEIGHT_IN_POINTS = 15;
 
     protected Workbook workbook;
     /**
@@ -115,9 +124,9 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
      */
     protected WidthStrategy widthStrategy = WidthStrategy.NO_AUTO;
     /**
-     * 暂存单元格，由后续行认领
+     * 跨行单元格在后续行的占位，由后续行认领
      */
-    private List<Td> stagingTds = new LinkedList<>();
+    private final SpanOccupancy spanOccupancy = new SpanOccupancy();
 
     private CreationHelper createHelper;
 
@@ -189,41 +198,149 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
         if (!tr.isVisibility()) {
             row.setZeroHeight(true);
         }
-        stagingTds.stream().filter(blankTd -> Objects.equals(blankTd.getRow(), tr.getIndex())).forEach(td -> {
-            if (tr.getTdList() == Collections.EMPTY_LIST) {
-                tr.setTdList(new LinkedList<>());
-            }
-            tr.getTdList().add(td);
-        });
+        if (this.isCompactRow(tr)) {
+            this.createCompactCells((CompactTr) tr, row);
+            row.setHeightInPoints(this.getRowHeight(tr, row.getHeightInPoints()));
+            return;
+        }
+        this.claimOccupiedTds(tr);
         for (Td td : tr.getTdList()) {
             this.createCell(td, sheet, row);
-            if (td.getRowSpan() == 0) {
-                continue;
+            spanOccupancy.occupy(td);
+        }
+        row.setHeightInPoints(this.getRowHeight(tr, row.getHeightInPoints()));
+    }
+
+    /**
+     * 创建行，直接写出，不经由POI行对象
+     *
+     * @param tr     tr
+     * @param writer xlsx直写器
+     * @throws IOException IOException
+     */
+    protected void createRow(Tr tr, XlsxDirectWriter writer) throws IOException {
+        if (this.isCompactRow(tr)) {
+            CompactTr compactTr = (CompactTr) tr;
+            int[] styleIds = new int[compactTr.size()];
+            for (int i = 0; i < styleIds.length; i++) {
+                CellStyle cellStyle = this.getCellStyle(compactTr.getStyle(i), false, compactTr.getContentType(i), false, tr.getIndex());
+                styleIds[i] = cellStyle == null ? 0 : cellStyle.getIndex();
             }
-            for (int i = td.getRow() + 1, rowBound = td.getRowBound(); i <= rowBound; i++) {
-                for (int j = td.getCol(), colBound = td.getColBound(); j <= colBound; j++) {
-                    Td blankTd = new Td(i, j);
-                    blankTd.setTh(td.isTh());
-                    blankTd.setStyle(td.getStyle());
-                    stagingTds.add(blankTd);
-                }
+            writer.writeCompactRow(tr.getIndex(), this.getRowHeight(tr, DEFAULT_ROW_HEIGHT_IN_POINTS), !tr.isVisibility(), compactTr, styleIds);
+            return;
+        }
+        this.claimOccupiedTds(tr);
+        List<Td> tdList = tr.getTdList();
+        int[] styleIds = new int[tdList.size()];
+        for (int i = 0, size = tdList.size(); i < size; i++) {
+            Td td = tdList.get(i);
+            CellStyle cellStyle = this.getCellStyle(td, tr.getIndex());
+            styleIds[i] = cellStyle == null ? 0 : cellStyle.getIndex();
+            spanOccupancy.occupy(td);
+        }
+        writer.writeRow(tr.getIndex(), this.getRowHeight(tr, DEFAULT_ROW_HEIGHT_IN_POINTS), !tr.isVisibility(), tdList, styleIds);
+    }
+
+    /**
+     * 是否可按紧凑行写出，当前行存在跨行占位时需展开处理
+     *
+     * @param tr tr
+     * @return true/false
+     */
+    private boolean isCompactRow(Tr tr) {
+        if (!(tr instanceof CompactTr) || !((CompactTr) tr).isCompact()) {
+            return false;
+        }
+        return !spanOccupancy.isOccupied(tr.getIndex());
+    }
+
+    /**
+     * 按列创建紧凑行单元格
+     *
+     * @param tr  紧凑行
+     * @param row row
+     */
+    private void createCompactCells(CompactTr tr, Row row) {
+        for (int i = 0, size = tr.size(); i < size; i++) {
+            Object value = tr.getValue(i);
+            ContentTypeEnum contentType = tr.getContentType(i);
+            Cell cell;
+            switch (contentType) {
+                case DOUBLE:
+                    cell = row.createCell(i, CellType.NUMERIC);
+                    if (value != null) {
+                        cell.setCellValue(Double.parseDouble((String) value));
+                    }
+                    break;
+                case DATE:
+                    cell = row.createCell(i);
+                    if (value instanceof Date) {
+                        cell.setCellValue((Date) value);
+                    } else if (value instanceof LocalDateTime) {
+                        cell.setCellValue((LocalDateTime) value);
+                    } else if (value instanceof LocalDate) {
+                        cell.setCellValue((LocalDate) value);
+                    }
+                    break;
+                case BOOLEAN:
+                    cell = row.createCell(i, CellType.BOOLEAN);
+                    if (value != null) {
+                        cell.setCellValue(Boolean.parseBoolean((String) value));
+                    }
+                    break;
+                default:
+                    cell = row.createCell(i, CellType.STRING);
+                    cell.setCellValue((String) value);
+                    break;
+            }
+            CellStyle cellStyle = this.getCellStyle(tr.getStyle(i), false, contentType, false, row.getRowNum());
+            if (cellStyle != null) {
+                cell.setCellStyle(cellStyle);
             }
         }
-        // 移除暂存区空白单元格
-        stagingTds.removeIf(td -> Objects.equals(td.getRow(), tr.getIndex()));
-        if (tr.getHeight() > 0) {
-            row.setHeightInPoints(tr.getHeight());
-        } else {
-            // 设置行高，最小12
-            if (maxTdHeightMap.get(row.getRowNum()) == null) {
-                row.setHeightInPoints(row.getHeightInPoints() + 5);
-            } else {
-                row.setHeightInPoints((short) (maxTdHeightMap.get(row.getRowNum()) + 5));
-                maxTdHeightMap.remove(row.getRowNum());
+    }
+
+    /**
+     * 取出上方跨行单元格在当前行的占位，以空白单元格补入当前行
+     *
+     * @param tr tr
+     */
+    private void claimOccupiedTds(Tr tr) {
+        SpanOccupancy.Occupied occupied = spanOccupancy.release(tr.getIndex());
+        if (occupied == null) {
+            return;
+        }
+        if (tr.getTdList() == Collections.EMPTY_LIST) {
+            tr.setTdList(new LinkedList<>());
+        }
+        for (Td td : occupied.getTds()) {
+            for (int j = td.getCol(), colBound = td.getColBound(); j <= colBound; j++) {
+                Td blankTd = new Td(tr.getIndex(), j);
+                blankTd.setTh(td.isTh());
+                blankTd.setStyle(td.getStyle());
+                tr.getTdList().add(blankTd);
             }
         }
     }
 
+    /**
+     * 获取行高，未指定时取行内最大字号，最小为默认行高
+     *
+     * @param tr                   tr
+     * @param defaultHeightInPoints 默认行高
+     * @return 行高
+     */
+    private float getRowHeight(Tr tr, float defaultHeightInPoints) {
+        if (tr.getHeight() > 0) {
+            return tr.getHeight();
+        }
+        Short maxTdHeight = maxTdHeightMap.remove(tr.getIndex());
+        if (maxTdHeight == null) {
+            return defaultHeightInPoints + 5;
+        }
+        return (short) (maxTdHeight + 5);
+    }
+
     /**
      * 创建单元格
      *
@@ -351,7 +468,10 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
                 default:
                     throw new IllegalArgumentException("Invalid image type");
             }
-            int pictureIdx = workbook.addPicture(bytes, format);
+            int pictureIdx;
+            synchronized (workbook) {
+                pictureIdx = workbook.addPicture(bytes, format);
+            }
             Drawing drawing = sheet.createDrawingPatriarch();
             ClientAnchor anchor = createHelper.createClientAnchor();
             anchor.setDx1(isHssf ? 2 : Units.EMU_PER_PIXEL);
@@ -413,56 +533,81 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
      * @param td   td单元格
      */
     private void setCellStyle(Row row, Cell cell, Td td) {
-        if (useDefaultStyle) {
-            if (td.isTh()) {
-                cell.setCellStyle(defaultCellStyleMap.get(HtmlTableParser.HtmlTag.th));
-            } else {
-                if (ContentTypeEnum.isLink(td.getTdContentType())) {
-                    cell.setCellStyle(defaultCellStyleMap.get(HtmlTableParser.HtmlTag.link));
-                } else {
-                    cell.setCellStyle(defaultCellStyleMap.get(HtmlTableParser.HtmlTag.td));
-                }
-            }
-        } else {
+        if (!useDefaultStyle) {
             this.doSetInnerSpan(cell, td);
-            if (td.getStyle().isEmpty()) {
-                return;
-            }
-            String fs = td.getStyle().get("font-size");
-            if (fs != null) {
-                short fontSize = (short) TdUtil.getValue(fs);
-                if (fontSize > maxTdHeightMap.getOrDefault(row.getRowNum(), FontStyle.DEFAULT_FONT_SIZE)) {
-                    maxTdHeightMap.put(row.getRowNum(), fontSize);
-                }
+        }
+        CellStyle cellStyle = this.getCellStyle(td, row.getRowNum());
+        if (cellStyle != null) {
+            cell.setCellStyle(cellStyle);
+        }
+    }
+
+    /**
+     * 获取单元格样式，相同样式共用同一CellStyle，同时记录行内最大字号
+     *
+     * @param td     td单元格
+     * @param rowNum 行号
+     * @return CellStyle，无样式时为null
+     */
+    private CellStyle getCellStyle(Td td, int rowNum) {
+        return this.getCellStyle(td.getStyle(), td.isTh(), td.getTdContentType(), td.getFonts() != null && !td.getFonts().isEmpty(), rowNum);
+    }
+
+    private CellStyle getCellStyle(Map<String, String> style, boolean th, ContentTypeEnum contentType, boolean hasFonts, int rowNum) {
+        if (useDefaultStyle) {
+            if (th) {
+                return defaultCellStyleMap.get(HtmlTableParser.HtmlTag.th);
             }
-            if (cellStyleMap.containsKey(td.getStyle())) {
-                cell.setCellStyle(cellStyleMap.get(td.getStyle()));
-                return;
+            if (ContentTypeEnum.isLink(contentType)) {
+                return defaultCellStyleMap.get(HtmlTableParser.HtmlTag.link);
             }
-            CellStyle cellStyle = workbook.createCellStyle();
-            // background-color
-            BackgroundStyle.setBackgroundColor(cellStyle, td.getStyle(), customColor);
-            // text-align
-            TextAlignStyle.setTextAlign(cellStyle, td.getStyle());
-            // border
-            BorderStyle.setBorder(cellStyle, td.getStyle());
-            // word-break
-            WordBreakStyle.setWordBreak(cellStyle, td.getStyle());
-            // 内容格式
-            String formatStr = td.getStyle().get("format");
-            if (formatStr != null) {
-                if (format == null) {
-                    format = workbook.createDataFormat();
-                }
-                cellStyle.setDataFormat(format.getFormat(formatStr));
+            return defaultCellStyleMap.get(HtmlTableParser.HtmlTag.td);
+        }
+        if (style.isEmpty()) {
+            return null;
+        }
+        String fs = style.get("font-size");
+        if (fs != null) {
+            short fontSize = (short) TdUtil.getValue(fs);
+            if (fontSize > maxTdHeightMap.getOrDefault(rowNum, FontStyle.DEFAULT_FONT_SIZE)) {
+                maxTdHeightMap.put(rowNum, fontSize);
             }
-            // font
-            if (td.getFonts() == null || td.getFonts().isEmpty()) {
-                FontStyle.setFont(() -> workbook.createFont(), cellStyle, td.getStyle(), fontMap, customColor);
+        }
+        CellStyle cellStyle = cellStyleMap.get(style);
+        if (cellStyle != null) {
+            return cellStyle;
+        }
+        // 工作簿可能由多个sheet写入线程共享，样式表需串行修改
+        synchronized (workbook) {
+            cellStyle = this.createCellStyle(style, hasFonts);
+        }
+        cellStyleMap.put(style, cellStyle);
+        return cellStyle;
+    }
+
+    private CellStyle createCellStyle(Map<String, String> style, boolean hasFonts) {
+        CellStyle cellStyle = workbook.createCellStyle();
+        // background-color
+        BackgroundStyle.setBackgroundColor(cellStyle, style, customColor);
+        // text-align
+        TextAlignStyle.setTextAlign(cellStyle, style);
+        // border
+        BorderStyle.setBorder(cellStyle, style);
+        // word-break
+        WordBreakStyle.setWordBreak(cellStyle, style);
+        // 内容格式
+        String formatStr = style.get("format");
+        if (formatStr != null) {
+            if (format == null) {
+                format = workbook.createDataFormat();
             }
-            cell.setCellStyle(cellStyle);
-            cellStyleMap.put(td.getStyle(), cellStyle);
+            cellStyle.setDataFormat(format.getFormat(formatStr));
+        }
+        // font
+        if (!hasFonts) {
+            FontStyle.setFont(() -> workbook.createFont(), cellStyle, style, fontMap, customColor);
         }
+        return cellStyle;
     }
 
     private void doSetInnerSpan(Cell cell, Td td) {
@@ -470,9 +615,11 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
             return;
         }
         RichTextString richText = isHssf ? new HSSFRichTextString(td.getContent()) : new XSSFRichTextString(td.getContent());
-        for (com.github.liaochong.myexcel.core.parser.Font font : td.getFonts()) {
-            Font f = FontStyle.getFont(font.getStyle(), fontMap, () -> workbook.createFont(), customColor);
-            richText.applyFont(font.getStartIndex(), font.getEndIndex(), f);
+        synchronized (workbook) {
+            for (com.github.liaochong.myexcel.core.parser.Font font : td.getFonts()) {
+                Font f = FontStyle.getFont(font.getStyle(), fontMap, () -> workbook.createFont(), customColor);
+                richText.applyFont(font.getStartIndex(), font.getEndIndex(), f);
+            }
         }
         cell.setCellValue(richText);
     }
@@ -498,9 +645,11 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
     protected void initCellStyle(Workbook workbook) {
         if (useDefaultStyle) {
             defaultCellStyleMap = new EnumMap<>(HtmlTableParser.HtmlTag.class);
-            defaultCellStyleMap.put(HtmlTableParser.HtmlTag.th, new ThDefaultCellStyle().supply(workbook));
-            defaultCellStyleMap.put(HtmlTableParser.HtmlTag.td, new TdDefaultCellStyle().supply(workbook));
-            defaultCellStyleMap.put(HtmlTableParser.HtmlTag.link, new LinkDefaultCellStyle().supply(workbook));
+            synchronized (workbook) {
+                defaultCellStyleMap.put(HtmlTableParser.HtmlTag.th, new ThDefaultCellStyle().supply(workbook));
+                defaultCellStyleMap.put(HtmlTableParser.HtmlTag.td, new TdDefaultCellStyle().supply(workbook));
+                defaultCellStyleMap.put(HtmlTableParser.HtmlTag.link, new LinkDefaultCellStyle().supply(workbook));
+            }
         } else {
             if (workbook instanceof HSSFWorkbook) {
                 HSSFPalette palette = ((HSSFWorkbook) workbook).getCustomPalette();
@@ -573,6 +722,16 @@ public abstract class AbstractExcelFactory implements ExcelFactory {
                 sheet.autoSizeColumn(i);
             }
         }
+        this.setFixedColWidth(colMaxWidthMap, sheet);
+    }
+
+    /**
+     * 按列宽Map设置列宽
+     *
+     * @param colMaxWidthMap 列最大宽度Map
+     * @param sheet          sheet
+     */
+    protected void setFixedColWidth(Map<Integer, Integer> colMaxWidthMap, Sheet sheet) {
         colMaxWidthMap.forEach((key, value) -> {
             int contentLength = value << 1;
             if (contentLength > 255) {
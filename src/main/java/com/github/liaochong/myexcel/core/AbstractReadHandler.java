@@ -180,6 +180,9 @@ abstract class AbstractReadHandler<T> {
     }
 
     protected void newRow(int rowNum) {
+        if (readConfig.getCancellationToken() != null) {
+            readConfig.getCancellationToken().throwIfCancelled();
+        }
         currentRow.setRowNum(rowNum);
         obj = newInstance.get();
         prevColNum = -1;
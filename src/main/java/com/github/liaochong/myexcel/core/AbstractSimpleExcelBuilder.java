@@ -27,6 +27,7 @@ import com.github.liaochong.myexcel.core.constant.LinkUrl;
 import com.github.liaochong.myexcel.core.constant.NumberDropDownList;
 import com.github.liaochong.myexcel.core.container.Pair;
 import com.github.liaochong.myexcel.core.converter.WriteConverterContext;
+import com.github.liaochong.myexcel.core.parser.CompactTr;
 import com.github.liaochong.myexcel.core.parser.ContentTypeEnum;
 import com.github.liaochong.myexcel.core.parser.StyleParser;
 import com.github.liaochong.myexcel.core.parser.Table;
@@ -55,6 +56,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -110,6 +112,18 @@ abstract class AbstractSimpleExcelBuilder {
      * 是否拥有聚合列
      */
     protected boolean hasMultiColumn = false;
+    /**
+     * 紧凑行共用的列格式化，为null时尚未初始化
+     */
+    private volatile String[] compactFormats;
+    /**
+     * 紧凑行共用的列宽
+     */
+    private Map<Integer, Integer> compactColWidthMap;
+    /**
+     * 是否存在公式列，存在时不创建紧凑行
+     */
+    private boolean hasFormula;
 
 
     public AbstractSimpleExcelBuilder(boolean isCsvBuild) {
@@ -336,19 +350,77 @@ abstract class AbstractSimpleExcelBuilder {
         return tr;
     }
 
+    /**
+     * 创建紧凑内容行，仅含普通内容时不创建单元格对象，列宽由写入方估算；
+     * 存在公式列或含下拉列表、链接、图片等内容时仍创建普通内容行
+     *
+     * @param contents 内容集合
+     * @return 内容行
+     */
+    protected Tr createCompactTr(List<Pair<? extends Class, ?>> contents) {
+        if (contents.isEmpty()) {
+            return this.createTr(contents);
+        }
+        String[] formatArray = compactFormats;
+        if (formatArray == null) {
+            formatArray = this.initCompactFormats();
+        }
+        if (hasFormula) {
+            return this.createTr(contents);
+        }
+        int size = contents.size();
+        Object[] values = new Object[size];
+        ContentTypeEnum[] contentTypes = new ContentTypeEnum[size];
+        for (int i = 0; i < size; i++) {
+            Pair<? extends Class, ?> pair = contents.get(i);
+            Class fieldType = pair.getKey();
+            if (fieldType == NullType.class) {
+                contentTypes[i] = ContentTypeEnum.STRING;
+            } else if (String.class == fieldType) {
+                values[i] = String.valueOf(pair.getValue());
+                contentTypes[i] = ContentTypeEnum.STRING;
+            } else if (ReflectUtil.isNumber(fieldType)) {
+                values[i] = String.valueOf(pair.getValue());
+                contentTypes[i] = ContentTypeEnum.DOUBLE;
+            } else if (ReflectUtil.isDate(fieldType)) {
+                values[i] = pair.getValue();
+                contentTypes[i] = ContentTypeEnum.DATE;
+            } else if (ReflectUtil.isBool(fieldType)) {
+                values[i] = String.valueOf(pair.getValue());
+                contentTypes[i] = ContentTypeEnum.BOOLEAN;
+            } else if (com.github.liaochong.myexcel.core.constant.File.class.isAssignableFrom(fieldType)
+                    || fieldType == DropDownList.class || fieldType == NumberDropDownList.class
+                    || fieldType == BooleanDropDownList.class || fieldType == LinkUrl.class || fieldType == LinkEmail.class) {
+                return this.createTr(contents);
+            } else {
+                values[i] = String.valueOf(pair.getValue());
+                contentTypes[i] = ContentTypeEnum.STRING;
+            }
+        }
+        CompactTr tr = new CompactTr(0, configuration.getRowHeight(), values, contentTypes, formatArray);
+        tr.setColWidthMap(compactColWidthMap);
+        return tr;
+    }
+
+    private synchronized String[] initCompactFormats() {
+        if (compactFormats != null) {
+            return compactFormats;
+        }
+        hasFormula = filteredFields.stream().map(excelColumnMappingMap::get).anyMatch(mapping -> mapping != null && mapping.isFormula());
+        // 列宽可能由各份文件的分发线程并发写入
+        compactColWidthMap = new ConcurrentHashMap<>(customWidthMap);
+        String[] formatArray = new String[formats.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1];
+        formats.forEach((k, v) -> formatArray[k] = v);
+        compactFormats = formatArray;
+        return formatArray;
+    }
+
     private void setTdWidth(Map<Integer, Integer> colWidthMap, Td td) {
         if (!configuration.isComputeAutoWidth()) {
             return;
         }
-        if (td.getFormat() == null) {
-            colWidthMap.put(td.getCol(), TdUtil.getStringWidth(td.getContent()));
-        } else {
-            if (td.getContent() != null && td.getFormat().length() > td.getContent().length()) {
-                colWidthMap.put(td.getCol(), TdUtil.getStringWidth(td.getFormat()));
-            } else if (td.getDate() != null || td.getLocalDate() != null || td.getLocalDateTime() != null) {
-                colWidthMap.put(td.getCol(), TdUtil.getStringWidth(td.getFormat(), -0.15));
-            }
-        }
+        boolean date = td.getDate() != null || td.getLocalDate() != null || td.getLocalDateTime() != null;
+        colWidthMap.put(td.getCol(), TdUtil.getCellWidth(td.getContent(), td.getFormat(), date));
     }
 
     private void setFormula(int i, Td td) {
@@ -543,23 +615,33 @@ abstract class AbstractSimpleExcelBuilder {
      */
     protected <T> LinkedList<Pair<? extends Class, ?>> getOriginalRenderContent(T data, List<Field> sortedFields) {
         return sortedFields.stream()
-                .map(field -> {
-                    Pair<? extends Class, Object> value = WriteConverterContext.convert(field, data, convertContext);
-                    if (value.getValue() != null) {
-                        return value;
-                    }
-                    String defaultValue = defaultValueMap.get(field);
-                    if (defaultValue != null) {
-                        return Pair.of(String.class, defaultValue);
-                    }
-                    if (configuration.getDefaultValue() != null) {
-                        return Pair.of(String.class, configuration.getDefaultValue());
-                    }
-                    return value;
-                })
+                .map(field -> this.getOriginalRenderValue(data, field))
                 .collect(Collectors.toCollection(LinkedList::new));
     }
 
+    /**
+     * 获取单个字段需要被渲染的内容
+     *
+     * @param data  数据
+     * @param field 字段
+     * @param <T>   泛型
+     * @return 渲染内容
+     */
+    protected <T> Pair<? extends Class, ?> getOriginalRenderValue(T data, Field field) {
+        Pair<? extends Class, Object> value = WriteConverterContext.convert(field, data, convertContext);
+        if (value.getValue() != null) {
+            return value;
+        }
+        String defaultValue = defaultValueMap.get(field);
+        if (defaultValue != null) {
+            return Pair.of(String.class, defaultValue);
+        }
+        if (configuration.getDefaultValue() != null) {
+            return Pair.of(String.class, configuration.getDefaultValue());
+        }
+        return value;
+    }
+
     protected List<Pair<? extends Class, ?>> assemblingMapContents(Map<String, Object> data) {
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import com.github.liaochong.myexcel.exception.CancelledException;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 取消令牌，可在流式构建、读取间共享，主动取消或超过截止时间后，
+ * 阻塞的生产者、写入线程以及读取均尽快终止并清理临时文件
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class CancellationToken {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(CancellationToken.class);
+    /**
+     * 未设置截止时间时的最长等待时间
+     */
+    private static final long DEFAULT_WAIT_NANOS = TimeUnit.HOURS.toNanos(1);
+    /**
+     * 截止时间，基于System.nanoTime，0表示无截止时间
+     */
+    private final long deadline;
+
+    private volatile boolean cancelled;
+
+    private final List<Runnable> cancelCallbacks = new ArrayList<>();
+
+    public CancellationToken() {
+        this.deadline = 0;
+    }
+
+    /**
+     * 自当前时间起，超过指定时长即视为取消
+     *
+     * @param timeout 时长
+     */
+    public CancellationToken(Duration timeout) {
+        long nanos = timeout.toNanos();
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("Timeout must be greater than 0");
+        }
+        long deadline = System.nanoTime() + nanos;
+        this.deadline = deadline == 0 ? 1 : deadline;
+    }
+
+    /**
+     * 取消，执行已注册的取消回调，重复调用无效
+     */
+    public void cancel() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            callbacks = new ArrayList<>(cancelCallbacks);
+            cancelCallbacks.clear();
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.warn("Cancel callback failure", e);
+            }
+        }
+    }
+
+    /**
+     * 是否已取消，超过截止时间时触发取消
+     *
+     * @return true/false
+     */
+    public boolean isCancelled() {
+        if (cancelled) {
+            return true;
+        }
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            this.cancel();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 已取消时抛出CancelledException
+     */
+    public void throwIfCancelled() {
+        if (this.isCancelled()) {
+            throw new CancelledException(deadline == 0 ? "Task cancelled" : "Task cancelled or deadline exceeded");
+        }
+    }
+
+    /**
+     * 阻塞等待的最长时间，不超过截止时间
+     *
+     * @return 纳秒
+     */
+    long getWaitNanos() {
+        if (deadline == 0) {
+            return DEFAULT_WAIT_NANOS;
+        }
+        return Math.max(0, Math.min(DEFAULT_WAIT_NANOS, deadline - System.nanoTime()));
+    }
+
+    /**
+     * 注册取消回调，已取消时立即执行
+     *
+     * @param callback 回调
+     */
+    void onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * 移除取消回调，任务正常完成后调用，避免长期持有的令牌引用已完成的任务
+     *
+     * @param callback 回调
+     */
+    synchronized void removeOnCancel(Runnable callback) {
+        cancelCallbacks.remove(callback);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import com.github.liaochong.myexcel.core.parser.CompactTr;
+import com.github.liaochong.myexcel.core.parser.ContentTypeEnum;
+import com.github.liaochong.myexcel.core.parser.Td;
+import com.github.liaochong.myexcel.core.parser.Tr;
+import com.github.liaochong.myexcel.utils.TdUtil;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 流式列宽估算器，由写入线程使用，以数组记录各列最大宽度，不逐行创建列宽Map；
+ * 可设置前若干行全部估算，其后按间隔抽样
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+class ColumnWidthEstimator {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * 全部估算的行数
+     */
+    private final int fullRows;
+    /**
+     * 抽样间隔，小于等于1时全部估算
+     */
+    private final int interval;
+    /**
+     * 各列最大宽度，0为未估算
+     */
+    private int[] maxWidths = EMPTY;
+    /**
+     * 固定宽度，其中的列不予估算
+     */
+    private Map<Integer, Integer> fixedWidthMap;
+
+    ColumnWidthEstimator(int fullRows, int interval) {
+        this.fullRows = fullRows;
+        this.interval = interval;
+    }
+
+    /**
+     * 行是否参与估算
+     *
+     * @param rowIndex sheet内行索引
+     * @return true/false
+     */
+    boolean isSampled(int rowIndex) {
+        return interval <= 1 || rowIndex < fullRows || (rowIndex - fullRows) % interval == 0;
+    }
+
+    void update(Tr tr) {
+        if (tr instanceof CompactTr && ((CompactTr) tr).isCompact()) {
+            this.update((CompactTr) tr);
+            return;
+        }
+        if (tr.getColWidthMap() != null && !tr.getColWidthMap().isEmpty()) {
+            fixedWidthMap = tr.getColWidthMap();
+        }
+        for (Td td : tr.getTdList()) {
+            this.ensureCapacity(td.getCol() + 1);
+            int width = td.isTh() ? TdUtil.getStringWidth(td.getContent(), 0.25)
+                    : TdUtil.getCellWidth(td.getContent(), td.getFormat(), td.getTdContentType() == ContentTypeEnum.DATE);
+            if (td.getColSpan() > 1) {
+                width = (int) Math.ceil(width * 1.0 / td.getColSpan());
+            }
+            if (width > maxWidths[td.getCol()]) {
+                maxWidths[td.getCol()] = width;
+            }
+        }
+    }
+
+    private void update(CompactTr tr) {
+        fixedWidthMap = tr.getColWidthMap();
+        int size = tr.size();
+        this.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            Object value = tr.getValue(i);
+            int width = TdUtil.getCellWidth(value instanceof String ? (String) value : null, tr.getFormat(i),
+                    tr.getContentType(i) == ContentTypeEnum.DATE);
+            if (width > maxWidths[i]) {
+                maxWidths[i] = width;
+            }
+        }
+    }
+
+    /**
+     * 估算结果并入列宽并重置，已有更大宽度或固定宽度的列保持不变
+     *
+     * @param colWidthMap 列宽
+     */
+    void flushTo(Map<Integer, Integer> colWidthMap) {
+        for (int i = 0; i < maxWidths.length; i++) {
+            int width = maxWidths[i];
+            if (width == 0 || (fixedWidthMap != null && fixedWidthMap.containsKey(i))) {
+                continue;
+            }
+            Integer val = colWidthMap.get(i);
+            if (val == null || width > val) {
+                colWidthMap.put(i, width);
+            }
+        }
+        Arrays.fill(maxWidths, 0);
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > maxWidths.length) {
+            maxWidths = Arrays.copyOf(maxWidths, Math.max(size, maxWidths.length << 1));
+        }
+    }
+}
@@ -19,8 +19,12 @@ import com.github.liaochong.myexcel.utils.TempFileOperator;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * @author liaochong
@@ -33,20 +37,24 @@ public class Csv {
      */
     private Path filePath;
 
-    Csv(Path filePath) {
+    /**
+     * 是否为gzip压缩文件
+     */
+    private boolean compressed;
+
+    Csv(Path filePath, boolean compressed) {
         this.filePath = filePath;
-        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
-        try {
-            Files.write(this.filePath, bom);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        this.compressed = compressed;
     }
 
     public Path getFilePath() {
         return filePath;
     }
 
+    public boolean isCompressed() {
+        return compressed;
+    }
+
     public void write(Path target) {
         this.write(target, false);
     }
@@ -62,17 +70,20 @@ public class Csv {
             }
             try (FileInputStream fis = new FileInputStream(filePath.toFile());
                  FileOutputStream fos = new FileOutputStream(target.toFile(), true)) {
-                if (append && Files.exists(target) && Files.size(target) > 0) {
-                    long size = fis.skip(3);
-                    if (size != 3) {
-                        throw new IllegalStateException("Skip byte failure");
+                boolean skipBom = append && Files.exists(target) && Files.size(target) > 0;
+                if (compressed && skipBom) {
+                    // 压缩文件需解压后跳过bom，再作为新的gzip成员追加
+                    try (GZIPInputStream gis = new GZIPInputStream(fis);
+                         GZIPOutputStream gos = new GZIPOutputStream(fos)) {
+                        skipBom(gis);
+                        copy(gis, gos);
                     }
+                    return;
                 }
-                byte[] buffer = new byte[8 * 1024];
-                int len;
-                while ((len = fis.read(buffer)) != -1) {
-                    fos.write(buffer, 0, len);
+                if (skipBom) {
+                    skipBom(fis);
                 }
+                copy(fis, fos);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -81,6 +92,21 @@ public class Csv {
         }
     }
 
+    private void skipBom(InputStream is) throws IOException {
+        long size = is.skip(3);
+        if (size != 3) {
+            throw new IllegalStateException("Skip byte failure");
+        }
+    }
+
+    private void copy(InputStream is, OutputStream os) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            os.write(buffer, 0, len);
+        }
+    }
+
     public void clear() {
         TempFileOperator.deleteTempFile(filePath);
     }
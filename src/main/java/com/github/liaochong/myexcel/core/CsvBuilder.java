@@ -16,22 +16,43 @@ package com.github.liaochong.myexcel.core;
 
 import com.github.liaochong.myexcel.core.constant.Constants;
 import com.github.liaochong.myexcel.core.container.Pair;
+import com.github.liaochong.myexcel.core.io.NonClosingOutputStream;
 import com.github.liaochong.myexcel.core.reflect.ClassFieldContainer;
+import com.github.liaochong.myexcel.exception.CancelledException;
 import com.github.liaochong.myexcel.exception.CsvBuildException;
 import com.github.liaochong.myexcel.utils.ReflectUtil;
 import com.github.liaochong.myexcel.utils.TempFileOperator;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
 
 /**
  * CSV文件构建器
@@ -41,15 +62,130 @@ import java.util.stream.Collectors;
  */
 public class CsvBuilder<T> extends AbstractSimpleExcelBuilder implements Closeable {
 
-    private static final Pattern PATTERN_QUOTES_PREMISE = Pattern.compile("[,\"]+");
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    private static final Pattern PATTERN_QUOTES = Pattern.compile("\"");
+    private static final char BOM = '\uFEFF';
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * 并行渲染时未写入的数据块上限，达到上限后追加阻塞至数据块写入
+     */
+    private static final int MAX_PENDING_CHUNKS = 64;
+
+    /**
+     * 渲染失败的数据块占位，有序写入时跳过
+     */
+    private static final Chunk FAILED_CHUNK = new Chunk(new byte[0], new ArrayList<>());
 
     /**
      * 文件路径
      */
     private volatile Csv csv;
 
+    /**
+     * 是否以gzip压缩方式写入
+     */
+    private boolean compressed;
+
+    /**
+     * 写入器，构建期间保持打开，build时关闭
+     */
+    private Writer writer;
+
+    /**
+     * 写入器底层输出流，并行渲染的数据块直接写入该流
+     */
+    private OutputStream out;
+
+    /**
+     * 目标输出流，设置后直接写入该流，不再生成临时文件
+     */
+    private OutputStream outputStream;
+
+    /**
+     * 目标输出流是否已写入
+     */
+    private boolean outputStreamStarted;
+
+    /**
+     * 线程池，设置后各批次数据在线程池中并行渲染
+     */
+    private ExecutorService executorService;
+
+    /**
+     * 并行渲染时是否按追加顺序写入
+     */
+    private boolean ordered = true;
+
+    /**
+     * 追加序号
+     */
+    private long appendSequence;
+
+    /**
+     * 下一个待写入的序号
+     */
+    private long writeSequence;
+
+    /**
+     * 已渲染待写入的数据块
+     */
+    private final Map<Long, Chunk> pendingChunks = new HashMap<>();
+
+    private final List<CompletableFuture<Void>> futures = new LinkedList<>();
+
+    /**
+     * 未写入数据块许可，数据块写入或跳过后释放
+     */
+    private final Semaphore chunkPermits = new Semaphore(MAX_PENDING_CHUNKS);
+
+    /**
+     * 并行渲染或写入失败原因，失败后的数据块不再写入
+     */
+    private volatile Throwable chunkFailure;
+
+    /**
+     * 文件分割，单个csv文件容量（行数，包含标题行）
+     */
+    private int capacity;
+
+    /**
+     * 分割文件完成时的消费函数
+     */
+    private Consumer<Path> pathConsumer;
+
+    /**
+     * 当前文件已写入行数
+     */
+    private int lineCount;
+
+    /**
+     * 已完成的分割文件
+     */
+    private final List<Path> partPaths = new ArrayList<>();
+
+    /**
+     * 是否在各分割文件写入完成时即开始压缩
+     */
+    private boolean zipped;
+
+    /**
+     * 已开始压缩的分割文件，与partPaths一一对应
+     */
+    private final List<PartZip> partZips = new ArrayList<>();
+
+    /**
+     * 未设置线程池时用于压缩的专用线程池
+     */
+    private ExecutorService zipExecutor;
+
+    private CancellationToken cancellationToken;
+
+    private volatile boolean cancelled;
+
+    private final Runnable cancelCallback = this::cancel;
+
     private CsvBuilder() {
         super(true);
     }
@@ -75,17 +211,125 @@ public class CsvBuilder<T> extends AbstractSimpleExcelBuilder implements Closeab
     }
 
     public CsvBuilder<T> titles(List<String> titles) {
+        this.checkOutputNotStarted("titles");
         this.titles = titles;
         return this;
     }
 
     public CsvBuilder<T> noTitles() {
+        this.checkOutputNotStarted("titles");
         this.titles = null;
         return this;
     }
 
+    /**
+     * 以gzip压缩方式写入，生成.csv.gz文件
+     *
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> compressed() {
+        this.checkOutputNotStarted("compression");
+        this.compressed = true;
+        return this;
+    }
+
+    /**
+     * 设置线程池，每次追加的数据在线程池中并行渲染，渲染结果按追加顺序写入文件
+     *
+     * @param executorService 线程池
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> threadPool(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    /**
+     * 并行渲染时按渲染完成顺序写入，不保证与追加顺序一致
+     *
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> unordered() {
+        this.ordered = false;
+        return this;
+    }
+
+    /**
+     * 单个csv文件容量，超出后写入新的文件，每个文件均包含标题行
+     *
+     * @param capacity 容量（行数，包含标题行）
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> capacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        if (outputStream != null) {
+            throw new IllegalStateException("Capacity is not supported when writing to the output stream");
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * 各分割文件写入完成即开始压缩，其余文件继续写入，buildAsZip时仅合并压缩结果；
+     * 压缩在线程池中进行，未设置线程池时使用专用线程池，压缩完成前分割文件不可被移动或删除
+     *
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> zipped() {
+        this.zipped = true;
+        return this;
+    }
+
+    /**
+     * 分割文件完成时的消费函数，每个文件写入完成后立即调用
+     *
+     * @param pathConsumer pathConsumer
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> pathConsumer(Consumer<Path> pathConsumer) {
+        this.pathConsumer = pathConsumer;
+        return this;
+    }
+
+    /**
+     * 取消令牌，令牌取消或超过截止时间后停止写入并清理临时文件，追加、构建抛出CancelledException
+     *
+     * @param cancellationToken 取消令牌
+     * @return CsvBuilder
+     */
+    public CsvBuilder<T> cancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+        cancellationToken.onCancel(cancelCallback);
+        return this;
+    }
+
+    /**
+     * 直接写入目标输出流，如http响应流，bom及标题立即写出，后续追加的数据随之写出，
+     * 该模式下不生成临时文件，build方法仅完成写出且返回null，目标流需由调用方关闭
+     *
+     * @param outputStream 目标输出流
+     * @return CsvBuilder
+     */
+    public synchronized CsvBuilder<T> writeTo(OutputStream outputStream) {
+        this.checkOutputNotStarted("the output stream");
+        if (capacity > 0) {
+            throw new IllegalStateException("Capacity is not supported when writing to the output stream");
+        }
+        this.outputStream = outputStream;
+        try {
+            this.getWriter().flush();
+        } catch (IOException e) {
+            this.clear();
+            throw new CsvBuildException("Build csv failure", e);
+        }
+        return this;
+    }
+
     public Csv build(List<T> beans) {
-        return this.doWrite(beans);
+        this.doWrite(beans);
+        return this.build();
     }
 
     public void append(List<T> beans) {
@@ -93,106 +337,581 @@ public class CsvBuilder<T> extends AbstractSimpleExcelBuilder implements Closeab
     }
 
     public Csv build() {
-        return csv;
+        this.joinFutures();
+        synchronized (this) {
+            this.checkNotCancelled();
+            try {
+                this.closeWriter();
+            } catch (IOException e) {
+                this.clear();
+                throw new CsvBuildException("Build csv failure", e);
+            }
+            return csv;
+        }
+    }
+
+    /**
+     * 停止追加数据，path方式构建，未设置容量时仅包含一个文件
+     *
+     * @return path集合
+     */
+    public List<Path> buildAsPaths() {
+        this.joinFutures();
+        synchronized (this) {
+            this.checkNotCancelled();
+            try {
+                if (csv != null) {
+                    this.finishPart();
+                }
+            } catch (IOException e) {
+                this.clear();
+                throw new CsvBuildException("Build csv failure", e);
+            }
+            return new ArrayList<>(partPaths);
+        }
+    }
+
+    /**
+     * 停止追加数据，zip方式构建，各分割文件在线程池中并行压缩；
+     * 设置zipped时分割文件已在写入完成时开始压缩，此处仅等待并合并
+     *
+     * @param fileName zip内文件名称前缀
+     * @return zip文件
+     */
+    public Path buildAsZip(String fileName) {
+        List<Path> paths = this.buildAsPaths();
+        String suffix = compressed ? Constants.CSV + Constants.GZ : Constants.CSV;
+        List<PartZip> zips;
+        synchronized (this) {
+            for (int i = partZips.size(), size = paths.size(); i < size; i++) {
+                partZips.add(this.startDeflate(paths.get(i)));
+            }
+            zips = new ArrayList<>(partZips);
+            partZips.clear();
+        }
+        Path zipFile = TempFileOperator.createTempFile(fileName, ".zip");
+        int index = 0;
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zipFile.toFile())) {
+            for (int size = zips.size(); index < size; index++) {
+                PartZip zip = zips.get(index);
+                try (ScatterZipOutputStream scatter = zip.future.join()) {
+                    zip.entry.rename(fileName + " (" + (index + 1) + ")" + suffix);
+                    scatter.writeTo(out);
+                }
+            }
+        } catch (IOException | CompletionException e) {
+            // 释放尚未写入zip的压缩结果
+            for (int i = index + 1, size = zips.size(); i < size; i++) {
+                zips.get(i).future.thenAccept(this::closeQuietly);
+            }
+            TempFileOperator.deleteTempFile(zipFile);
+            throw new CsvBuildException("Build csv zip failure", e);
+        } finally {
+            synchronized (this) {
+                TempFileOperator.deleteTempFiles(partPaths);
+                partPaths.clear();
+                this.shutdownZipExecutor();
+            }
+        }
+        return zipFile;
     }
 
-    private Csv doWrite(List<T> beans) {
+    private PartZip startDeflate(Path path) {
+        PartEntry entry = new PartEntry(path.getFileName().toString());
+        if (executorService != null) {
+            return new PartZip(entry, CompletableFuture.supplyAsync(() -> this.deflate(entry, path), executorService));
+        }
+        if (zipExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            zipExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread thread = new Thread(r, "myexcel-zip-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return new PartZip(entry, CompletableFuture.supplyAsync(() -> this.deflate(entry, path), zipExecutor));
+    }
+
+    private void shutdownZipExecutor() {
+        if (zipExecutor != null) {
+            zipExecutor.shutdown();
+            zipExecutor = null;
+        }
+    }
+
+    private ScatterZipOutputStream deflate(ZipArchiveEntry entry, Path path) {
+        Path scatterFile = TempFileOperator.createTempFile("c_s_z", ".tmp");
+        try {
+            ScatterZipOutputStream scatter = ScatterZipOutputStream.fileBased(scatterFile.toFile());
+            // 已压缩文件无需再次压缩
+            entry.setMethod(compressed ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> {
+                try {
+                    return Files.newInputStream(path);
+                } catch (IOException e) {
+                    throw new CsvBuildException("Read csv failure", e);
+                }
+            }));
+            return scatter;
+        } catch (IOException e) {
+            TempFileOperator.deleteTempFile(scatterFile);
+            throw new CsvBuildException("Compress csv failure", e);
+        }
+    }
+
+    private void closeQuietly(ScatterZipOutputStream scatter) {
+        try {
+            scatter.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+    private void joinFutures() {
+        List<CompletableFuture<Void>> currentFutures;
+        synchronized (futures) {
+            currentFutures = new ArrayList<>(futures);
+            futures.clear();
+        }
+        Throwable failure;
         try {
-            if (beans == null || beans.isEmpty()) {
-                return csv;
+            currentFutures.forEach(CompletableFuture::join);
+            failure = chunkFailure;
+        } catch (CompletionException e) {
+            failure = e.getCause();
+        }
+        if (failure == null) {
+            return;
+        }
+        this.clear();
+        if (failure instanceof CancelledException) {
+            throw (CancelledException) failure;
+        }
+        throw new CsvBuildException("Build csv failure", failure);
+    }
+
+    private void doWrite(List<T> beans) {
+        this.checkNotCancelled();
+        if (beans == null || beans.isEmpty()) {
+            return;
+        }
+        if (executorService != null) {
+            this.doParallelWrite(beans);
+            return;
+        }
+        synchronized (this) {
+            try {
+                this.writeToCsv(beans);
+                if (outputStream != null) {
+                    writer.flush();
+                }
+            } catch (CancelledException e) {
+                this.clear();
+                throw e;
+            } catch (Exception e) {
+                this.clear();
+                throw new CsvBuildException("Build csv failure", e);
+            }
+        }
+    }
+
+    private void doParallelWrite(List<T> beans) {
+        if (chunkFailure != null) {
+            this.joinFutures();
+        }
+        try {
+            chunkPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvBuildException("Build csv failure", e);
+        }
+        long sequence;
+        synchronized (this) {
+            try {
+                // 标题需先于所有数据块写入
+                this.getWriter();
+            } catch (IOException e) {
+                chunkPermits.release();
+                this.clear();
+                throw new CsvBuildException("Build csv failure", e);
+            }
+            sequence = appendSequence++;
+        }
+        // 渲染失败同样推进写入序号，避免后续数据块永久等待
+        CompletableFuture<Void> future = CompletableFuture
+                .supplyAsync(() -> this.render(beans), executorService)
+                .handle((chunk, e) -> {
+                    this.writeChunk(sequence, chunk, e);
+                    return null;
+                });
+        synchronized (futures) {
+            // 失败原因已单独记录，已完成的任务无需保留
+            futures.removeIf(CompletableFuture::isDone);
+            futures.add(future);
+        }
+    }
+
+    private Chunk render(List<T> beans) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(beans.size() * 64);
+        List<Integer> lineOffsets = new ArrayList<>();
+        try (Writer chunkWriter = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            if (capacity > 0) {
+                // 记录每行起始位置，以便写入时按容量分割
+                this.writeRows(chunkWriter, beans, w -> {
+                    w.flush();
+                    lineOffsets.add(bytes.size());
+                    return w;
+                });
+            } else {
+                this.writeRows(chunkWriter, beans, w -> w);
+            }
+        } catch (IOException e) {
+            throw new CsvBuildException("Render csv failure", e);
+        }
+        return new Chunk(bytes.toByteArray(), lineOffsets);
+    }
+
+    /**
+     * 写入数据块，有序模式下数据块暂存直至其之前的数据块全部写入；
+     * 渲染失败的数据块仅占位推进序号，首次失败后的数据块均不再写入
+     *
+     * @param sequence 追加序号
+     * @param chunk    数据块，渲染失败时为null
+     * @param failure  渲染失败原因
+     */
+    private synchronized void writeChunk(long sequence, Chunk chunk, Throwable failure) {
+        if (failure != null) {
+            this.recordChunkFailure(failure);
+            chunk = FAILED_CHUNK;
+        }
+        if (!ordered) {
+            chunkPermits.release();
+            this.writeIfNoFailure(chunk);
+            return;
+        }
+        pendingChunks.put(sequence, chunk);
+        Chunk next;
+        while ((next = pendingChunks.remove(writeSequence)) != null) {
+            writeSequence++;
+            chunkPermits.release();
+            this.writeIfNoFailure(next);
+        }
+    }
+
+    private void writeIfNoFailure(Chunk chunk) {
+        if (chunkFailure != null || chunk == FAILED_CHUNK) {
+            return;
+        }
+        try {
+            this.checkNotCancelled();
+            this.getWriter().flush();
+            this.writeChunkBytes(chunk);
+            if (outputStream != null) {
+                out.flush();
             }
-            List<List<?>> contents = getRenderContent(beans);
-            this.writeToCsv(contents);
         } catch (Exception e) {
-            if (csv != null) {
-                TempFileOperator.deleteTempFile(csv.getFilePath());
+            this.recordChunkFailure(e);
+        }
+    }
+
+    private void recordChunkFailure(Throwable failure) {
+        if (chunkFailure == null) {
+            chunkFailure = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        }
+    }
+
+    private void writeChunkBytes(Chunk chunk) throws IOException {
+        int start = 0;
+        for (int lineOffset : chunk.lineOffsets) {
+            if (lineCount == capacity) {
+                out.write(chunk.bytes, start, lineOffset - start);
+                start = lineOffset;
+                this.finishPart();
+                this.getWriter().flush();
             }
-            throw new CsvBuildException("Build csv failure", e);
+            lineCount++;
         }
-        return csv;
+        out.write(chunk.bytes, start, chunk.bytes.length - start);
+    }
+
+    private void writeToCsv(List<T> data) throws IOException {
+        this.writeRows(this.getWriter(), data, this::startLine);
     }
 
     /**
-     * 获取需要被渲染的内容
+     * 开始新的一行，达到容量时切换至新的文件
      *
-     * @param data 数据集合
-     * @return 结果集
+     * @param writer 当前写入器
+     * @return 该行使用的写入器
+     * @throws IOException IOException
      */
+    private Writer startLine(Writer writer) throws IOException {
+        if (capacity > 0 && lineCount == capacity) {
+            this.finishPart();
+            writer = this.getWriter();
+        }
+        lineCount++;
+        return writer;
+    }
+
+    /**
+     * 完成当前文件的写入
+     *
+     * @throws IOException IOException
+     */
+    private void finishPart() throws IOException {
+        this.closeWriter();
+        Path path = csv.getFilePath();
+        partPaths.add(path);
+        if (zipped) {
+            partZips.add(this.startDeflate(path));
+        }
+        csv = null;
+        lineCount = 0;
+        if (pathConsumer != null) {
+            pathConsumer.accept(path);
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    private List<List<?>> getRenderContent(List<T> data) {
-        List<List<?>> result = new LinkedList<>();
+    private void writeRows(Writer writer, List<T> data, LineStarter lineStarter) throws IOException {
         if (isMapBuild) {
             for (T datum : data) {
-                List<Pair<? extends Class, ?>> resolvedDataList = this.assemblingMapContents((Map<String, Object>) datum);
-                this.appendContent(result, resolvedDataList);
+                this.checkNotCancelled();
+                writer = lineStarter.start(writer);
+                this.writeContents(writer, this.assemblingMapContents((Map<String, Object>) datum));
             }
         } else if (hasMultiColumn) {
             for (T datum : data) {
+                this.checkNotCancelled();
                 List<List<Pair<? extends Class, ?>>> contents = this.getMultiRenderContent(datum, filteredFields);
                 for (List<Pair<? extends Class, ?>> content : contents) {
-                    this.appendContent(result, content);
+                    writer = lineStarter.start(writer);
+                    this.writeContents(writer, content);
                 }
             }
         } else {
             for (T datum : data) {
-                List<Pair<? extends Class, ?>> contents = this.getOriginalRenderContent(datum, filteredFields);
-                this.appendContent(result, contents);
+                this.checkNotCancelled();
+                writer = lineStarter.start(writer);
+                for (int i = 0, size = filteredFields.size(); i < size; i++) {
+                    Field field = filteredFields.get(i);
+                    this.writeValue(writer, i, this.getOriginalRenderValue(datum, field).getValue());
+                }
+                writer.write(LINE_SEPARATOR);
             }
         }
-        return result;
     }
 
-    private void appendContent(List<List<?>> result, List<Pair<? extends Class, ?>> resolvedDataList) {
-        List<?> values = resolvedDataList.stream().map(Pair::getValue).collect(Collectors.toList());
-        result.add(values);
+    private void writeTitles(Writer writer) throws IOException {
+        if (titles == null) {
+            return;
+        }
+        for (int i = 0, size = titles.size(); i < size; i++) {
+            this.writeValue(writer, i, titles.get(i));
+        }
+        writer.write(LINE_SEPARATOR);
+        lineCount++;
     }
 
-    private void writeToCsv(List<List<?>> data) {
-        if (titles != null) {
-            synchronized (this) {
-                if (titles == null) {
-                    return;
-                }
-                data.add(0, titles);
-                titles = null;
+    private void writeContents(Writer writer, List<Pair<? extends Class, ?>> contents) throws IOException {
+        int i = 0;
+        for (Pair<? extends Class, ?> content : contents) {
+            this.writeValue(writer, i++, content.getValue());
+        }
+        writer.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * 单次扫描完成转义写入：包含逗号或引号的值整体加引号，内部引号双写
+     *
+     * @param writer writer
+     * @param index  列索引
+     * @param value  值
+     * @throws IOException IOException
+     */
+    private void writeValue(Writer writer, int index, Object value) throws IOException {
+        if (index > 0) {
+            writer.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+        String content = value.toString();
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (c == ',' || c == '"') {
+                break;
             }
+            i++;
         }
-        List<String> content = data.stream().map(d -> {
-            return d.stream().map(v -> {
-                if (v == null) {
-                    return "";
-                }
-                String vStr = v.toString();
-                vStr = PATTERN_QUOTES.matcher(vStr).replaceAll("\"\"");
-                boolean hasComma = PATTERN_QUOTES_PREMISE.matcher(v.toString()).find();
-                if (hasComma) {
-                    vStr = "\"" + vStr + "\"";
-                }
-                return vStr;
-            }).collect(Collectors.joining(Constants.COMMA));
-        }).collect(Collectors.toCollection(LinkedList::new));
+        if (i == length) {
+            writer.write(content);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (; i < length; i++) {
+            if (content.charAt(i) == '"') {
+                writer.write(content, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(content, start, length - start);
+        writer.write('"');
+    }
 
-        synchronized (this) {
-            try {
-                if (csv == null) {
-                    Path csvTemp = TempFileOperator.createTempFile("d_t_c", Constants.CSV);
-                    csv = new Csv(csvTemp);
-                }
-                Files.write(csv.getFilePath(), content, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private Writer getWriter() throws IOException {
+        if (writer != null) {
+            return writer;
+        }
+        boolean newFile;
+        OutputStream os;
+        if (outputStream != null) {
+            if (outputStreamStarted) {
+                throw new IllegalStateException("Csv has been built to the output stream");
+            }
+            outputStreamStarted = true;
+            newFile = true;
+            os = new NonClosingOutputStream(outputStream);
+        } else {
+            newFile = csv == null;
+            if (newFile) {
+                Path csvTemp = TempFileOperator.createTempFile("d_t_c", compressed ? Constants.CSV + Constants.GZ : Constants.CSV);
+                csv = new Csv(csvTemp, compressed);
             }
+            os = Files.newOutputStream(csv.getFilePath(), StandardOpenOption.APPEND);
+        }
+        if (compressed) {
+            // build后再次追加时将作为新的gzip成员写入，GZIPInputStream可连续读取
+            os = new GZIPOutputStream(os, BUFFER_SIZE);
+        }
+        out = os;
+        writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (newFile) {
+            writer.write(BOM);
+            this.writeTitles(writer);
+        }
+        return writer;
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } finally {
+            writer = null;
+            out = null;
+        }
+    }
+
+    /**
+     * bom及标题写出后，影响文件头部的设置不可再修改
+     *
+     * @param setting 设置项
+     */
+    private synchronized void checkOutputNotStarted(String setting) {
+        if (writer != null || csv != null || outputStreamStarted || !partPaths.isEmpty()) {
+            throw new IllegalStateException("Csv output has been started, " + setting + " can not be changed");
+        }
+    }
+
+    private void checkNotCancelled() {
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCancelled();
+        }
+        if (cancelled) {
+            throw new CancelledException("Build cancelled");
+        }
+    }
+
+    /**
+     * 取消构建，停止写入并删除已生成的文件
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            this.clear();
+            TempFileOperator.deleteTempFiles(partPaths);
+            partPaths.clear();
         }
     }
 
     @Override
     public void close() throws IOException {
+        if (cancellationToken != null) {
+            cancellationToken.removeOnCancel(cancelCallback);
+        }
         clear();
     }
 
-    public void clear() {
+    public synchronized void clear() {
+        try {
+            this.closeWriter();
+        } catch (IOException e) {
+            // do nothing
+        }
+        pendingChunks.clear();
         if (csv != null) {
             csv.clear();
         }
+        partZips.forEach(zip -> zip.future.thenAccept(this::closeQuietly));
+        partZips.clear();
+        this.shutdownZipExecutor();
+    }
+
+    /**
+     * 并行渲染的数据块
+     */
+    private static final class Chunk {
+
+        private final byte[] bytes;
+
+        /**
+         * 每行起始位置，仅设置容量时记录
+         */
+        private final List<Integer> lineOffsets;
+
+        Chunk(byte[] bytes, List<Integer> lineOffsets) {
+            this.bytes = bytes;
+            this.lineOffsets = lineOffsets;
+        }
+    }
+
+    /**
+     * 分割文件的压缩条目，名称于合并时确定
+     */
+    private static final class PartEntry extends ZipArchiveEntry {
+
+        PartEntry(String name) {
+            super(name);
+        }
+
+        void rename(String name) {
+            this.setName(name);
+        }
+    }
+
+    private static final class PartZip {
+
+        private final PartEntry entry;
+
+        private final CompletableFuture<ScatterZipOutputStream> future;
+
+        PartZip(PartEntry entry, CompletableFuture<ScatterZipOutputStream> future) {
+            this.entry = entry;
+            this.future = future;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LineStarter {
+
+        Writer start(Writer writer) throws IOException;
     }
 }
@@ -17,15 +17,18 @@ package com.github.liaochong.myexcel.core;
 import com.github.liaochong.myexcel.core.constant.Constants;
 import com.github.liaochong.myexcel.core.io.BOMInputStream;
 import com.github.liaochong.myexcel.core.io.ByteOrderMark;
+import com.github.liaochong.myexcel.exception.CancelledException;
 import com.github.liaochong.myexcel.exception.StopReadException;
 import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author liaochong
@@ -46,15 +49,37 @@ class CsvReadHandler<T> extends AbstractReadHandler<T> {
                           SaxExcelReader.ReadConfig<T> readConfig,
                           List<T> result) {
         super(true, result, readConfig);
-        BOMInputStream bomInputStream = new BOMInputStream(is, ByteOrderMark.UTF_8, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_32BE, ByteOrderMark.UTF_32LE);
-        this.is = bomInputStream;
         try {
+            BOMInputStream bomInputStream = new BOMInputStream(decompressIfGzip(is), ByteOrderMark.UTF_8, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_32BE, ByteOrderMark.UTF_32LE);
+            this.is = bomInputStream;
             this.charset = bomInputStream.getBOMCharsetName() != null ? bomInputStream.getBOMCharsetName() : readConfig.getCharset();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 依据gzip魔数判断是否为压缩流，是则以流的方式解压
+     *
+     * @param is 输入流
+     * @return 解压后的输入流
+     * @throws IOException IOException
+     */
+    private static InputStream decompressIfGzip(InputStream is) throws IOException {
+        if (is == null) {
+            return null;
+        }
+        InputStream markableStream = is.markSupported() ? is : new BufferedInputStream(is);
+        markableStream.mark(2);
+        int b1 = markableStream.read();
+        int b2 = markableStream.read();
+        markableStream.reset();
+        if (b1 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b2 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return new GZIPInputStream(markableStream, 64 * 1024);
+        }
+        return markableStream;
+    }
+
     public void read() {
         if (is == null) {
             return;
@@ -72,6 +97,8 @@ class CsvReadHandler<T> extends AbstractReadHandler<T> {
         } catch (StopReadException e) {
             log.info("Sax import takes {} ms", System.currentTimeMillis() - startTime);
             throw e;
+        } catch (CancelledException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
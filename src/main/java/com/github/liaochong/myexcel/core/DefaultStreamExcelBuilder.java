@@ -15,6 +15,7 @@
  */
 package com.github.liaochong.myexcel.core;
 
+import com.github.liaochong.myexcel.core.constant.Constants;
 import com.github.liaochong.myexcel.core.container.Pair;
 import com.github.liaochong.myexcel.core.parser.ParseConfig;
 import com.github.liaochong.myexcel.core.parser.Table;
@@ -23,6 +24,7 @@ import com.github.liaochong.myexcel.core.reflect.ClassFieldContainer;
 import com.github.liaochong.myexcel.core.strategy.AutoWidthStrategy;
 import com.github.liaochong.myexcel.core.strategy.WidthStrategy;
 import com.github.liaochong.myexcel.core.templatehandler.TemplateHandler;
+import com.github.liaochong.myexcel.exception.ExcelBuildException;
 import com.github.liaochong.myexcel.utils.ReflectUtil;
 import com.github.liaochong.myexcel.utils.TempFileOperator;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -31,15 +33,21 @@ import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -78,8 +86,34 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
      * 模板处理器
      */
     private TemplateHandler templateHandler;
+    /**
+     * 固定sheet名称，优先于类注解中的配置
+     */
+    private String fixedSheetName;
+    /**
+     * 是否为多sheet构建器中的sheet，工作簿由多sheet构建器持有
+     */
+    private boolean multiSheet;
+
+    private static final int MAX_BATCH_SIZE = 1024;
 
     private final List<CompletableFuture<Void>> asyncAppendFutures = new LinkedList<>();
+    /**
+     * 异步追加序号
+     */
+    private long asyncAppendSequence;
+    /**
+     * 下一个待写入的异步追加序号
+     */
+    private long nextAppendSequence;
+    /**
+     * 已渲染待写入的异步追加数据，按追加序号写入以保证行顺序
+     */
+    private final Map<Long, List<List<Tr>>> renderedTrs = new HashMap<>();
+    /**
+     * 首个异步追加异常，出现后不再写入后续批次，构建时抛出
+     */
+    private volatile Throwable asyncAppendFailure;
 
     private final HtmlToExcelStreamFactory.HtmlToExcelStreamFactoryContext context = new HtmlToExcelStreamFactory.HtmlToExcelStreamFactoryContext();
 
@@ -211,6 +245,23 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         return this;
     }
 
+    /**
+     * 自动宽度估算抽样，前fullRows行全部估算，其后每interval行估算一行，
+     * 适用于COMPUTE_AUTO_WIDTH及xlsx下的AUTO_WIDTH
+     *
+     * @param fullRows 全部估算的行数
+     * @param interval 抽样间隔
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> autoWidthSampling(int fullRows, int interval) {
+        if (fullRows < 0 || interval < 1) {
+            throw new IllegalArgumentException("Full rows must not be negative and interval must be greater than 0");
+        }
+        this.context.widthSampleRows = fullRows;
+        this.context.widthSampleInterval = interval;
+        return this;
+    }
+
     @Deprecated
     public DefaultStreamExcelBuilder<T> autoWidthStrategy(AutoWidthStrategy autoWidthStrategy) {
         configuration.setWidthStrategy(AutoWidthStrategy.map(autoWidthStrategy));
@@ -255,6 +306,7 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
 
     @Override
     public DefaultStreamExcelBuilder<T> capacity(int capacity) {
+        this.checkNotMultiSheet("Capacity");
         if (capacity < 1) {
             throw new IllegalArgumentException("Capacity must be greater than 0");
         }
@@ -262,6 +314,22 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         return this;
     }
 
+    /**
+     * 设置容量时同时构建的份数，各份拥有独立的写入线程，按行序号区间分发数据，各份待写入队列容量同waitQueueSize，
+     * 结果通过buildAsPaths、buildAsZip获取，pathConsumer可能在各份写入线程中被调用
+     *
+     * @param concurrentParts 同时构建的份数
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> concurrentParts(int concurrentParts) {
+        this.checkNotMultiSheet("Concurrent parts");
+        if (concurrentParts < 1) {
+            throw new IllegalArgumentException("Concurrent parts must be greater than 0");
+        }
+        this.context.concurrentParts = concurrentParts;
+        return this;
+    }
+
     @Override
     public DefaultStreamExcelBuilder<T> pathConsumer(Consumer<Path> pathConsumer) {
         this.context.pathConsumer = pathConsumer;
@@ -274,8 +342,69 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         return this;
     }
 
+    /**
+     * 待写入队列容量，以行计；追加的数据按批次入队，每批次不超过该容量及1024行
+     *
+     * @param waitQueueSize 队列容量
+     * @return DefaultStreamExcelBuilder
+     */
     public DefaultStreamExcelBuilder<T> waitQueueSize(int waitQueueSize) {
-        this.context.trWaitQueue = new LinkedBlockingQueue<>(waitQueueSize);
+        this.context.trWaitQueue = new TrBatchQueue(waitQueueSize, this.context.trWaitQueue.getWaitStrategy());
+        return this;
+    }
+
+    /**
+     * 追加方与写入线程交接数据时的等待策略，默认阻塞等待
+     *
+     * @param waitStrategy 等待策略
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> waitStrategy(WaitStrategy waitStrategy) {
+        Objects.requireNonNull(waitStrategy);
+        this.context.trWaitQueue = new TrBatchQueue(this.context.trWaitQueue.getCapacity(), waitStrategy);
+        return this;
+    }
+
+    /**
+     * 内存预算，待写入数据估算占用超出预算时阻塞追加，直至写入线程消费释放
+     *
+     * @param maxBytes 最大字节数
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> memoryBudget(long maxBytes) {
+        return memoryBudget(new MemoryBudget(maxBytes));
+    }
+
+    /**
+     * 内存预算，多个构建共用同一预算时可限制整体内存上限
+     *
+     * @param memoryBudget 内存预算
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> memoryBudget(MemoryBudget memoryBudget) {
+        this.context.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * 压缩SXSSF临时文件，以CPU换取磁盘空间及IO，磁盘为瓶颈时使用
+     *
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> compressTempFiles() {
+        this.context.compressTempFiles = true;
+        return this;
+    }
+
+    /**
+     * 取消令牌，令牌取消或超过截止时间后，阻塞的追加方及写入线程尽快终止，
+     * 追加、构建抛出CancelledException，临时文件随之清理
+     *
+     * @param cancellationToken 取消令牌
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> cancellationToken(CancellationToken cancellationToken) {
+        this.context.cancellationToken = cancellationToken;
         return this;
     }
 
@@ -305,6 +434,37 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         return this;
     }
 
+    /**
+     * 直写模式，不经由SXSSF，行数据直接写入xlsx文件，不产生中间临时文件
+     * <p>
+     * 仅支持xlsx，结果通过buildAsPaths、buildAsZip获取，不支持图片以及startSheet；
+     * 追加已有xlsx时，已有行按原始xml复制，不再经由bean转换
+     *
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> directWrite() {
+        this.checkNotMultiSheet("Direct write");
+        this.context.directWrite = true;
+        return this;
+    }
+
+    /**
+     * 直接写入目标输出流，如http响应流，需在start之前调用，隐含直写模式，
+     * 追加的数据随生成写出，build方法完成写出且返回null，目标流需由调用方关闭
+     *
+     * @param outputStream 目标输出流
+     * @return DefaultStreamExcelBuilder
+     */
+    public DefaultStreamExcelBuilder<T> writeTo(OutputStream outputStream) {
+        this.checkNotMultiSheet("Writing to the output stream");
+        if (htmlToExcelStreamFactory != null) {
+            throw new IllegalStateException("Build has been started, the output stream can not be changed");
+        }
+        this.context.outputStream = Objects.requireNonNull(outputStream);
+        this.context.directWrite = true;
+        return this;
+    }
+
     public DefaultStreamExcelBuilder<T> titleRowHeight(int titleRowHeight) {
         this.configuration.setTitleRowHeight(titleRowHeight);
         return this;
@@ -328,23 +488,36 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
             ClassFieldContainer classFieldContainer = ReflectUtil.getAllFieldsOfClass(dataType);
             filteredFields = getFilteredFields(classFieldContainer, groups);
         }
+        if (fixedSheetName != null) {
+            configuration.setSheetName(fixedSheetName);
+        }
         context.styleParser = styleParser;
         htmlToExcelStreamFactory = new HtmlToExcelStreamFactory(context);
         htmlToExcelStreamFactory.widthStrategy(configuration.getWidthStrategy());
-        if (workbook == null) {
+        if (context.directWrite) {
+            if (workbook != null || configuration.getWorkbookType() == WorkbookType.XLS) {
+                throw new IllegalArgumentException("Direct write only supports new xlsx workbook");
+            }
+            if (context.outputStream != null && context.capacity > 0) {
+                throw new IllegalStateException("Capacity is not supported when writing to the output stream");
+            }
+            htmlToExcelStreamFactory.workbookType(WorkbookType.XLSX);
+            if (excel != null && Files.exists(excel) && excel.toString().endsWith(Constants.XLSX) && context.concurrentParts <= 1) {
+                // 直写时已有行按原始xml复制，仅新行经由bean转换
+                context.rawCopyExcel = excel;
+            }
+        } else if (workbook == null) {
             htmlToExcelStreamFactory.workbookType(configuration.getWorkbookType());
         }
         Table table = this.createTable();
-        htmlToExcelStreamFactory.start(table, workbook);
-
-        List<Tr> head = this.createThead();
-        if (head != null) {
-            htmlToExcelStreamFactory.appendTitles(head);
-        }
-        if (excel != null && Files.exists(excel)) {
+        htmlToExcelStreamFactory.start(table, workbook, this.createThead());
+        if (excel != null && Files.exists(excel) && context.rawCopyExcel == null) {
             log.info("start reading existing excel data.");
             SaxExcelReader<T> reader = SaxExcelReader.of(dataType)
                     .readAllSheet();
+            if (context.cancellationToken != null) {
+                reader.cancellationToken(context.cancellationToken);
+            }
             if (titleLevel > 0) {
                 reader.rowFilter(row -> row.getRowNum() > titleLevel - 1);
             }
@@ -362,42 +535,51 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         if (dataList == null || dataList.isEmpty()) {
             return;
         }
+        // 按批次入队，减少逐行入队的锁竞争
+        int batchSize = this.getBatchSize();
+        List<Tr> trs = new ArrayList<>(Math.min(dataList.size(), batchSize));
         for (T data : dataList) {
-            this.append(data);
+            this.createTrs(trs, data);
+            if (trs.size() >= batchSize) {
+                htmlToExcelStreamFactory.append(trs);
+                trs = new ArrayList<>(batchSize);
+            }
         }
+        htmlToExcelStreamFactory.append(trs);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void append(T data) {
         if (cancel) {
             log.info("Canceled build task");
             return;
         }
+        List<Tr> trs = new ArrayList<>(1);
+        this.createTrs(trs, data);
+        htmlToExcelStreamFactory.append(trs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void createTrs(List<Tr> trs, T data) {
         if (data == null) {
             return;
         }
         if (isMapBuild) {
             List<Pair<? extends Class, ?>> contents = assemblingMapContents((Map<String, Object>) data);
-            this.appendTr(contents);
+            trs.add(this.createCompactTr(contents));
             return;
         }
         if (hasMultiColumn) {
             List<List<Pair<? extends Class, ?>>> contents = this.getMultiRenderContent(data, filteredFields);
             for (List<Pair<? extends Class, ?>> content : contents) {
-                this.appendTr(content);
+                trs.add(this.createCompactTr(content));
             }
         } else {
             List<Pair<? extends Class, ?>> contents = this.getOriginalRenderContent(data, filteredFields);
-            this.appendTr(contents);
+            trs.add(this.createCompactTr(contents));
         }
     }
 
-    private void appendTr(List<Pair<? extends Class, ?>> contents) {
-        Tr tr = this.createTr(contents);
-        htmlToExcelStreamFactory.append(tr);
-    }
-
     public <E> void append(String templateFilePath, Map<String, E> renderData) {
         templateHandler.classpathTemplate(templateFilePath);
         this.doAppend(renderData);
@@ -408,56 +590,170 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         this.doAppend(renderData);
     }
 
+    /**
+     * 异步追加，数据获取及行渲染在线程池中并行进行，渲染结果按调用顺序写入
+     *
+     * @param supplier 数据提供者
+     */
     public void asyncAppend(ListSupplier<T> supplier) {
-        CompletableFuture<Void> future;
-        if (this.context.executorService == null) {
-            future = CompletableFuture.runAsync(() -> {
-                this.append(supplier.getAsList());
-            });
-        } else {
-            future = CompletableFuture.runAsync(() -> {
-                this.append(supplier.getAsList());
-            }, this.context.executorService);
+        this.doAsyncAppend(() -> this.render(supplier.getAsList()));
+    }
+
+    /**
+     * 异步追加，数据获取及行渲染在线程池中并行进行，渲染结果按调用顺序写入
+     *
+     * @param supplier 数据提供者
+     */
+    public void asyncAppend(Supplier<T> supplier) {
+        this.doAsyncAppend(() -> this.render(Collections.singletonList(supplier.get())));
+    }
+
+    private void doAsyncAppend(Supplier<List<List<Tr>>> renderer) {
+        if (cancel) {
+            log.info("Canceled build task");
+            return;
         }
         synchronized (this) {
-            asyncAppendFutures.add(future);
+            long sequence = asyncAppendSequence++;
+            CompletableFuture<List<List<Tr>>> renderFuture;
+            if (this.context.executorService == null) {
+                renderFuture = CompletableFuture.supplyAsync(renderer);
+            } else {
+                renderFuture = CompletableFuture.supplyAsync(renderer, this.context.executorService);
+            }
+            // 渲染失败同样推进追加序号，避免后续批次永久等待
+            asyncAppendFutures.add(renderFuture.handle((trBatches, e) -> {
+                this.appendInOrder(sequence, trBatches, e);
+                return null;
+            }));
         }
     }
 
-    public void asyncAppend(Supplier<T> supplier) {
-        CompletableFuture<Void> future;
-        if (this.context.executorService == null) {
-            future = CompletableFuture.runAsync(() -> {
-                this.append(supplier.get());
-            });
-        } else {
-            future = CompletableFuture.runAsync(() -> {
-                this.append(supplier.get());
-            }, this.context.executorService);
+    /**
+     * 每批次行数，不超过待写入队列容量，使队列中的行数受容量约束
+     */
+    private int getBatchSize() {
+        return Math.min(MAX_BATCH_SIZE, context.trWaitQueue.getCapacity());
+    }
+
+    /**
+     * 渲染数据为行批次
+     *
+     * @param dataList 数据
+     * @return 行批次
+     */
+    private List<List<Tr>> render(List<T> dataList) {
+        List<List<Tr>> trBatches = new ArrayList<>();
+        if (dataList == null || dataList.isEmpty()) {
+            return trBatches;
         }
-        synchronized (this) {
-            asyncAppendFutures.add(future);
+        int batchSize = this.getBatchSize();
+        List<Tr> trs = new ArrayList<>(Math.min(dataList.size(), batchSize));
+        for (T data : dataList) {
+            this.createTrs(trs, data);
+            if (trs.size() >= batchSize) {
+                trBatches.add(trs);
+                trs = new ArrayList<>(batchSize);
+            }
+        }
+        if (!trs.isEmpty()) {
+            trBatches.add(trs);
+        }
+        return trBatches;
+    }
+
+    /**
+     * 按追加序号写入，先完成渲染的批次暂存，直至其之前的批次全部写入；
+     * 渲染或写入失败时记录异常，序号照常推进，其后的批次不再写入
+     *
+     * @param sequence  追加序号
+     * @param trBatches 行批次，渲染失败时为null
+     * @param failure   渲染异常
+     */
+    private void appendInOrder(long sequence, List<List<Tr>> trBatches, Throwable failure) {
+        synchronized (renderedTrs) {
+            if (failure != null && asyncAppendFailure == null) {
+                asyncAppendFailure = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            }
+            renderedTrs.put(sequence, trBatches == null ? Collections.emptyList() : trBatches);
+            List<List<Tr>> next;
+            while ((next = renderedTrs.remove(nextAppendSequence)) != null) {
+                nextAppendSequence++;
+                if (asyncAppendFailure != null) {
+                    continue;
+                }
+                try {
+                    next.forEach(htmlToExcelStreamFactory::append);
+                } catch (RuntimeException e) {
+                    asyncAppendFailure = e;
+                }
+            }
         }
     }
 
+    /**
+     * 构建，绑定输出流时仅完成写出，返回null
+     *
+     * @return Workbook
+     */
     @Override
     public Workbook build() {
         joinAsyncAppendFutures();
         return htmlToExcelStreamFactory.build();
     }
 
+    /**
+     * 限时构建，超时则终止构建并清理资源
+     *
+     * @param timeout 等待数据写入完成的最长时间
+     * @return Workbook
+     */
+    public Workbook build(Duration timeout) {
+        joinAsyncAppendFutures();
+        return htmlToExcelStreamFactory.build(timeout);
+    }
+
     @Override
     public List<Path> buildAsPaths() {
+        this.checkNotMultiSheet("Building as paths");
         joinAsyncAppendFutures();
         return htmlToExcelStreamFactory.buildAsPaths();
     }
 
     @Override
     public Path buildAsZip(String fileName) {
+        this.checkNotMultiSheet("Building as zip");
         joinAsyncAppendFutures();
         return htmlToExcelStreamFactory.buildAsZip(fileName);
     }
 
+    /**
+     * 作为多sheet构建器中的sheet，sheet名称固定，工作簿由多sheet构建器持有及关闭
+     *
+     * @param sheetName sheet名称
+     * @return DefaultStreamExcelBuilder
+     */
+    DefaultStreamExcelBuilder<T> multiSheet(String sheetName) {
+        this.fixedSheetName = sheetName;
+        this.multiSheet = true;
+        this.context.sharedWorkbook = true;
+        return this;
+    }
+
+    private void checkNotMultiSheet(String setting) {
+        if (multiSheet) {
+            throw new UnsupportedOperationException(setting + " is not supported by the sheet of multi-sheet builder");
+        }
+    }
+
+    List<String> getCreatedSheetNames() {
+        return htmlToExcelStreamFactory == null ? Collections.emptyList() : htmlToExcelStreamFactory.getCreatedSheetNames();
+    }
+
+    boolean isStarted() {
+        return htmlToExcelStreamFactory != null;
+    }
+
     @Override
     public void close() throws IOException {
         if (htmlToExcelStreamFactory != null) {
@@ -466,6 +762,9 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
         }
     }
 
+    /**
+     * 取消构建，不等待已追加数据写入完成，此后的追加将被忽略
+     */
     public void cancel() {
         cancel = true;
         htmlToExcelStreamFactory.cancel();
@@ -479,23 +778,22 @@ public class DefaultStreamExcelBuilder<T> extends AbstractSimpleExcelBuilder imp
     }
 
     private <E> void doAppend(Map<String, E> renderData) {
-        List<Table> tables;
         try {
-            tables = templateHandler.render(renderData, new ParseConfig(configuration.getWidthStrategy()));
+            templateHandler.render(renderData, new ParseConfig(configuration.getWidthStrategy()), htmlToExcelStreamFactory::append);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        if (tables == null || tables.isEmpty()) {
-            return;
-        }
-        for (Table table : tables) {
-            table.getTrList().forEach(htmlToExcelStreamFactory::append);
-        }
     }
 
     private void joinAsyncAppendFutures() {
-        if (!asyncAppendFutures.isEmpty()) {
-            asyncAppendFutures.forEach(CompletableFuture::join);
+        List<CompletableFuture<Void>> futures;
+        synchronized (this) {
+            futures = new ArrayList<>(asyncAppendFutures);
+        }
+        futures.forEach(CompletableFuture::join);
+        Throwable failure = asyncAppendFailure;
+        if (failure != null) {
+            throw new ExcelBuildException("Async append failure", failure);
         }
     }
 }
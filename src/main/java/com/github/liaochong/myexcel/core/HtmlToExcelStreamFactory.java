@@ -16,39 +16,52 @@
 package com.github.liaochong.myexcel.core;
 
 import com.github.liaochong.myexcel.core.constant.Constants;
+import com.github.liaochong.myexcel.core.io.NonClosingOutputStream;
+import com.github.liaochong.myexcel.core.parser.CompactTr;
 import com.github.liaochong.myexcel.core.parser.StyleParser;
 import com.github.liaochong.myexcel.core.parser.Table;
 import com.github.liaochong.myexcel.core.parser.Td;
 import com.github.liaochong.myexcel.core.parser.Tr;
+import com.github.liaochong.myexcel.core.strategy.WidthStrategy;
+import com.github.liaochong.myexcel.exception.CancelledException;
 import com.github.liaochong.myexcel.exception.ExcelBuildException;
 import com.github.liaochong.myexcel.utils.FileExportUtil;
 import com.github.liaochong.myexcel.utils.StringUtil;
 import com.github.liaochong.myexcel.utils.TdUtil;
 import com.github.liaochong.myexcel.utils.TempFileOperator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.PrintSetup;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * HtmlToExcelStreamFactory 流工厂
@@ -62,7 +75,16 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
 
     private static final int XLS_MAX_ROW_COUNT = 65536;
 
-    private static final Tr STOP_FLAG = new Tr(-1, 0);
+    /**
+     * 行、单元格对象估算占用字节数
+     */
+    private static final int TR_ESTIMATED_BYTES = 128;
+
+    private static final int TD_ESTIMATED_BYTES = 128;
+
+    private static final int COMPACT_CELL_ESTIMATED_BYTES = 16;
+
+    private static final List<Tr> STOP_FLAG = Collections.unmodifiableList(new ArrayList<>(0));
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(HtmlToExcelStreamFactory.class);
 
     private int maxRowCountOfSheet = XLSX_MAX_ROW_COUNT;
@@ -71,8 +93,6 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
 
     private boolean stop;
 
-    private volatile boolean exception;
-
     private long startTime;
 
     private String sheetName = "Sheet";
@@ -84,19 +104,42 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
     private int sheetNum;
 
     private int maxColIndex;
+    /**
+     * 列宽估算器，自动宽度时由写入线程使用
+     */
+    private ColumnWidthEstimator widthEstimator;
 
     /**
      * 计数器
      */
     private int count;
 
-    private List<Tr> titles;
+    private volatile List<Tr> titles;
     /**
      * 临时文件
      */
     private final List<Path> tempFilePaths = new ArrayList<>();
 
-    private final List<CompletableFuture<Void>> futures = new LinkedList<>();
+    /**
+     * 异步导出中的各份文件
+     */
+    private final Map<Path, CompletableFuture<Void>> exportFutures = new HashMap<>();
+    /**
+     * 并发构建的各份文件，按份序排列
+     */
+    private final List<HtmlToExcelStreamFactory> parts = new CopyOnWriteArrayList<>();
+    /**
+     * xlsx直写器，直写模式下替代SXSSF
+     */
+    private XlsxDirectWriter directWriter;
+    /**
+     * 已有文件原始行复制器
+     */
+    private XlsxRawSheetCopier rawSheetCopier;
+    /**
+     * 本工厂在工作簿中创建的sheet名称，按创建顺序
+     */
+    private final List<String> createdSheetNames = new ArrayList<>();
 
     /**
      * 接收线程
@@ -110,31 +153,83 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
     }
 
     /**
-     * 消费者是否完结
+     * 消费完结信号，消费异常时携带异常原因
+     */
+    private final CompletableFuture<Void> consumeFuture = new CompletableFuture<>();
+    /**
+     * 是否已取消
      */
-    private volatile boolean consumeFinished = false;
+    private volatile boolean cancelled;
+
+    private final Runnable cancelCallback = this::cancel;
 
     public void start(Table table, Workbook workbook) {
+        this.start(table, workbook, null);
+    }
+
+    /**
+     * 开始构建，标题在写入线程启动前设置，并发构建时各份据此写入标题及计算每份行数
+     *
+     * @param table    表格
+     * @param workbook 工作簿
+     * @param titles   标题行，可为null
+     */
+    public void start(Table table, Workbook workbook, List<Tr> titles) {
         log.info("Start build excel");
+        this.titles = titles;
         if (workbook != null) {
             this.workbook = workbook;
         }
         startTime = System.currentTimeMillis();
         if (table != null) {
-            sheetName = this.getRealSheetName(table.getCaption());
+            synchronized (this.workbook) {
+                sheetName = this.getRealSheetName(table.getCaption());
+            }
+        }
+        if (context.cancellationToken != null) {
+            context.cancellationToken.onCancel(cancelCallback);
+        }
+        // 流式sheet无法自适应宽度，改为按内容估算；xls仍由POI自适应
+        if (WidthStrategy.isComputeAutoWidth(widthStrategy)
+                || (WidthStrategy.isAutoWidth(widthStrategy) && !isHssf && !(this.workbook instanceof HSSFWorkbook))) {
+            widthEstimator = new ColumnWidthEstimator(context.widthSampleRows, context.widthSampleInterval);
         }
         Thread thread = new Thread(this::receive);
         thread.setName("myexcel-exec-" + thread.getId());
+        receiveThread = thread;
         thread.start();
+        if (titles != null && !this.isConcurrentParts()) {
+            this.append(new ArrayList<>(titles));
+        }
     }
 
     public void appendTitles(List<Tr> trList) {
+        if (this.isConcurrentParts() && receiveThread != null) {
+            throw new IllegalStateException("Titles must be passed to start when building concurrent parts");
+        }
         this.titles = trList;
-        trList.forEach(this::append);
+        // 并发构建时标题由各份自行写入
+        if (!this.isConcurrentParts()) {
+            this.append(new ArrayList<>(trList));
+        }
     }
 
     public void append(Tr tr) {
-        if (exception) {
+        if (tr == null) {
+            log.warn("This tr is null and will be discarded");
+            return;
+        }
+        this.append(Collections.singletonList(tr));
+    }
+
+    /**
+     * 批量追加，整批作为一个元素入队，写入线程每次唤醒处理整批数据
+     *
+     * @param trs 行集合
+     */
+    public void append(List<Tr> trs) {
+        this.checkNotCancelled();
+        if (consumeFuture.isCompletedExceptionally()) {
             log.error("Received a termination command,an exception occurred while processing");
             throw new UnsupportedOperationException("Received a termination command");
         }
@@ -142,75 +237,246 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
             log.error("Received a termination command,the build method has been called");
             throw new UnsupportedOperationException("Received a termination command");
         }
-        if (tr == null) {
-            log.warn("This tr is null and will be discarded");
+        if (trs == null || trs.isEmpty()) {
             return;
         }
-        this.putTrToQueue(tr);
+        this.putTrsToQueue(trs);
     }
 
     private void receive() {
         try {
+            if (this.isConcurrentParts()) {
+                this.dispatchToParts();
+                this.completeConsume();
+                return;
+            }
             if (this.workbook == null) {
-                workbookType(WorkbookType.SXLSX);
+                workbookType(context.directWrite ? WorkbookType.XLSX : WorkbookType.SXLSX);
             }
+            this.compressTempFilesIfNecessary();
             if (isHssf) {
                 maxRowCountOfSheet = XLS_MAX_ROW_COUNT;
             }
+            if (context.rawCopyExcel != null) {
+                // 已有样式需先于其他样式创建，以保持原有样式id
+                rawSheetCopier = new XlsxRawSheetCopier(context.rawCopyExcel);
+                rawSheetCopier.copyStyles(workbook);
+            }
             initCellStyle(this.workbook);
-            receiveThread = Thread.currentThread();
-            Tr tr = this.getTrFromQueue();
-            this.sheet = this.createSheet(sheetName);
-            if (maxColIndex == 0) {
-                int tdSize = tr.getTdList().size();
+            if (context.directWrite) {
+                this.openDirectWriter();
+            }
+            List<Tr> trs = this.getTrsFromQueue();
+            if (rawSheetCopier != null) {
+                this.copyRawSheets();
+            } else {
+                this.sheet = this.createSheet(sheetName);
+            }
+            if (maxColIndex == 0 && trs != STOP_FLAG) {
+                Tr firstTr = trs.get(0);
+                int tdSize = firstTr instanceof CompactTr ? ((CompactTr) firstTr).size() : firstTr.getTdList().size();
                 maxColIndex = tdSize > 0 ? tdSize - 1 : 0;
             }
+            // 已有数据包含标题，不再重复写入
+            if (count > 0 && titles != null && trs != STOP_FLAG && trs.get(0) == titles.get(0)) {
+                trs = this.getTrsFromQueue();
+            }
             int totalSize = 0;
-            while (tr != STOP_FLAG) {
-                if (context.capacity > 0 && count == context.capacity) {
-                    // 上一份数据保存
-                    this.storeToTempFile();
-                    // 开启下一份数据
-                    this.initNewWorkbook();
+            while (trs != STOP_FLAG) {
+                // 写入前估算，写入过程会修改行内容
+                long batchBytes = this.estimateBytes(trs);
+                try {
+                    totalSize += this.writeTrs(trs);
+                } finally {
+                    this.releaseMemory(batchBytes);
                 }
-                if (rowNum == maxRowCountOfSheet) {
-                    sheetNum++;
-                    this.setColWidth(colWidthMap, sheet, maxColIndex);
-                    colWidthMap = new HashMap<>();
-                    sheet = this.createSheet(sheetName + " (" + sheetNum + ")");
-                    rowNum = 0;
-                    this.setTitles();
-                }
-                setTdStyle(tr);
-                appendRow(tr);
-                totalSize++;
-                tr.getColWidthMap().forEach((k, v) -> {
-                    Integer val = this.colWidthMap.get(k);
-                    if (val == null || v > val) {
-                        this.colWidthMap.put(k, v);
-                    }
-                });
-                tr = this.getTrFromQueue();
+                trs = this.getTrsFromQueue();
             }
-            consumeFinished = true;
             log.info("Total size:{}", totalSize);
-        } catch (Exception e) {
-            exception = true;
-            context.trWaitQueue.clear();
-            context.trWaitQueue = null;
+            if (context.part) {
+                this.storeToTempFile();
+            }
+            this.completeConsume();
+        } catch (Throwable e) {
+            // 先置为异常完结，生产者不再入队，再清空队列释放阻塞的生产者
+            consumeFuture.completeExceptionally(e);
+            this.clearQueue();
+            clear();
+            if (cancelled || e instanceof CancelledException) {
+                log.info("Build cancelled");
+            } else {
+                log.error("An exception occurred while processing", e);
+            }
+        }
+    }
+
+    private void completeConsume() {
+        // 完成前已被取消，结果不再使用
+        if (!consumeFuture.complete(null)) {
             clear();
-            log.error("An exception occurred while processing", e);
-            throw new ExcelBuildException("An exception occurred while processing", e);
         }
     }
 
+    /**
+     * 并发构建各份文件，按行序号区间将数据分发至各份，各份拥有独立的写入线程、样式缓存及sheet，
+     * 奇偶样式等需按全局行序计算的内容仍在本线程完成
+     */
+    private void dispatchToParts() throws InterruptedException {
+        if (titles != null) {
+            titles.forEach(this::setTdStyle);
+        }
+        int rowsPerPart = Math.max(1, context.capacity - (titles == null ? 0 : titles.size()));
+        Deque<HtmlToExcelStreamFactory> runningParts = new ArrayDeque<>();
+        HtmlToExcelStreamFactory part = null;
+        List<Tr> batch = new ArrayList<>();
+        long sequence = 0;
+        boolean dispatched = false;
+        try {
+            List<Tr> trs = this.getTrsFromQueue();
+            while (trs != STOP_FLAG) {
+                for (Tr tr : trs) {
+                    if (sequence % rowsPerPart == 0) {
+                        if (part != null) {
+                            part.append(batch);
+                            batch = new ArrayList<>();
+                            part.finishPart();
+                        }
+                        part = this.startPart(runningParts);
+                    }
+                    setTdStyle(tr);
+                    batch.add(tr);
+                    sequence++;
+                }
+                if (!batch.isEmpty()) {
+                    part.append(batch);
+                    batch = new ArrayList<>();
+                }
+                trs = this.getTrsFromQueue();
+            }
+            dispatched = true;
+        } finally {
+            if (!dispatched) {
+                // 未分发的数据不会再被消费
+                this.releaseMemory(this.estimateBytes(batch));
+            }
+        }
+        if (part == null) {
+            part = this.startPart(runningParts);
+        }
+        part.finishPart();
+        for (HtmlToExcelStreamFactory finishedPart : parts) {
+            finishedPart.awaitPart();
+            tempFilePaths.addAll(finishedPart.tempFilePaths);
+        }
+        log.info("Total size:{}", sequence);
+    }
+
+    /**
+     * 开启新的一份，同时构建的份数达到上限时等待最早的一份完成
+     */
+    private HtmlToExcelStreamFactory startPart(Deque<HtmlToExcelStreamFactory> runningParts) throws InterruptedException {
+        while (runningParts.size() >= context.concurrentParts) {
+            runningParts.poll().awaitPart();
+        }
+        HtmlToExcelStreamFactoryContext partContext = new HtmlToExcelStreamFactoryContext();
+        // 各份队列与总队列容量相同，写入较慢的一份阻塞分发，待写入行数不随份数无限增长
+        partContext.trWaitQueue = new TrBatchQueue(context.trWaitQueue.getCapacity(), context.trWaitQueue.getWaitStrategy());
+        partContext.part = true;
+        partContext.pathConsumer = context.pathConsumer;
+        partContext.fixedTitles = context.fixedTitles;
+        partContext.styleParser = context.styleParser;
+        partContext.startSheetConsumer = context.startSheetConsumer;
+        partContext.freezePane = context.freezePane;
+        partContext.directWrite = context.directWrite;
+        partContext.memoryBudget = context.memoryBudget;
+        partContext.compressTempFiles = context.compressTempFiles;
+        partContext.widthSampleRows = context.widthSampleRows;
+        partContext.widthSampleInterval = context.widthSampleInterval;
+        HtmlToExcelStreamFactory part = new HtmlToExcelStreamFactory(partContext);
+        part.widthStrategy(widthStrategy);
+        part.workbookType(isHssf ? WorkbookType.XLS : context.directWrite ? WorkbookType.XLSX : WorkbookType.SXLSX);
+        part.sheetName = sheetName;
+        // 标题写入时会被修改，各份使用独立副本
+        part.start(null, null, titles == null ? null : titles.stream().map(Tr::new).collect(Collectors.toList()));
+        parts.add(part);
+        runningParts.add(part);
+        return part;
+    }
+
+    private void finishPart() {
+        this.stop = true;
+        this.putTrsToQueue(STOP_FLAG);
+    }
+
+    private void awaitPart() throws InterruptedException {
+        try {
+            consumeFuture.get();
+        } catch (ExecutionException e) {
+            throw new ExcelBuildException("An exception occurred while processing", e.getCause());
+        }
+    }
+
+    private boolean isConcurrentParts() {
+        return context.capacity > 0 && context.concurrentParts > 1;
+    }
+
+    private int writeTrs(List<Tr> trs) throws IOException {
+        int size = 0;
+        for (Tr tr : trs) {
+            this.checkNotCancelled();
+            if (context.capacity > 0 && count == context.capacity) {
+                // 上一份数据保存
+                this.storeToTempFile();
+                // 开启下一份数据
+                this.initNewWorkbook();
+            }
+            if (rowNum == maxRowCountOfSheet) {
+                sheetNum++;
+                this.endSheet();
+                colWidthMap = new HashMap<>();
+                sheet = this.createSheet(sheetName + " (" + sheetNum + ")");
+                rowNum = 0;
+                this.setTitles();
+            }
+            setTdStyle(tr);
+            appendRow(tr);
+            size++;
+            if (widthEstimator != null && widthEstimator.isSampled(tr.getIndex())
+                    && (tr instanceof CompactTr || !WidthStrategy.isComputeAutoWidth(widthStrategy))) {
+                widthEstimator.update(tr);
+            }
+            tr.getColWidthMap().forEach((k, v) -> {
+                Integer val = this.colWidthMap.get(k);
+                if (val == null || v > val) {
+                    this.colWidthMap.put(k, v);
+                }
+            });
+        }
+        return size;
+    }
+
     private void setTdStyle(Tr tr) {
-        if (tr.isFromTemplate()) {
+        // 各份数据已由分发线程设置样式
+        if (tr.isFromTemplate() || context.part) {
             return;
         }
         context.styleParser.toggle();
         // 是否为自定义宽度
         boolean isCustomWidth = !Objects.equals(tr.getColWidthMap(), Collections.emptyMap());
+        if (tr instanceof CompactTr && ((CompactTr) tr).isCompact()) {
+            CompactTr compactTr = (CompactTr) tr;
+            for (int i = 0, size = compactTr.size(); i < size; i++) {
+                Map<String, String> style = context.styleParser.getCellStyle(i, compactTr.getContentType(i), compactTr.getFormat(i));
+                compactTr.setStyle(i, style);
+                if (isCustomWidth) {
+                    String width = style.get("width");
+                    if (StringUtil.isNotBlank(width)) {
+                        tr.getColWidthMap().put(i, TdUtil.getValue(width));
+                    }
+                }
+            }
+            return;
+        }
         for (int i = 0, size = tr.getTdList().size(); i < size; i++) {
             Td td = tr.getTdList().get(i);
             if (td.isTh()) {
@@ -227,59 +493,209 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         }
     }
 
-    private Tr getTrFromQueue() throws InterruptedException {
-        Tr tr = context.trWaitQueue.poll(1, TimeUnit.HOURS);
-        if (tr == null) {
+    private List<Tr> getTrsFromQueue() throws InterruptedException {
+        List<Tr> trs = context.trWaitQueue.poll(this.getWaitNanos());
+        this.checkNotCancelled();
+        if (trs == null) {
             throw new IllegalStateException("Get tr failure,timeout 1 hour.");
         }
-        return tr;
+        return trs;
+    }
+
+    /**
+     * 阻塞等待的最长时间，设置取消令牌时不超过其截止时间
+     */
+    private long getWaitNanos() {
+        return context.cancellationToken == null ? TimeUnit.HOURS.toNanos(1) : context.cancellationToken.getWaitNanos();
+    }
+
+    private void checkNotCancelled() {
+        if (context.cancellationToken != null) {
+            context.cancellationToken.throwIfCancelled();
+        }
+        if (cancelled) {
+            throw new CancelledException("Build cancelled");
+        }
     }
 
     @Override
     public Workbook build() {
-        waiting();
+        return build(null);
+    }
+
+    /**
+     * 限时构建，超时则终止构建并清理资源
+     *
+     * @param timeout 等待消费完结的最长时间，null表示不限时
+     * @return Workbook
+     */
+    public Workbook build(Duration timeout) {
+        if (context.outputStream != null) {
+            waiting(timeout);
+            this.storeToTempFile();
+            log.info("Build Excel success,takes {} ms", System.currentTimeMillis() - startTime);
+            return null;
+        }
+        if (this.isConcurrentParts()) {
+            throw new UnsupportedOperationException("Concurrent parts do not produce workbook, use buildAsPaths or buildAsZip instead");
+        }
+        if (context.directWrite) {
+            throw new UnsupportedOperationException("Direct write does not produce workbook, use buildAsPaths or buildAsZip instead");
+        }
+        waiting(timeout);
+        this.flushEstimatedWidths();
         this.setColWidth(colWidthMap, sheet, maxColIndex);
         log.info("Build Excel success,takes {} ms", System.currentTimeMillis() - startTime);
         return workbook;
     }
 
+    List<String> getCreatedSheetNames() {
+        return createdSheetNames;
+    }
+
     List<Path> buildAsPaths() {
+        this.checkNotBoundToOutputStream();
         waiting();
-        this.storeToTempFile();
-        futures.forEach(CompletableFuture::join);
+        if (!this.isConcurrentParts()) {
+            this.storeToTempFile();
+        }
+        exportFutures.values().forEach(CompletableFuture::join);
         log.info("Build Excel success,takes {} ms", System.currentTimeMillis() - startTime);
         return tempFilePaths.stream().filter(path -> Objects.nonNull(path) && path.toFile().exists()).collect(Collectors.toList());
     }
 
     protected void waiting() {
-        if (exception) {
-            throw new IllegalStateException("An exception occurred while processing");
+        waiting(null);
+    }
+
+    protected void waiting(Duration timeout) {
+        this.checkNotCancelled();
+        if (consumeFuture.isCompletedExceptionally()) {
+            throw new ExcelBuildException("An exception occurred while processing", getConsumeException());
         }
         this.stop = true;
-        this.putTrToQueue(STOP_FLAG);
-        while (!consumeFinished) {
-            // wait all tr received
-            if (exception) {
-                throw new IllegalThreadStateException("An exception occurred while processing");
+        this.putTrsToQueue(STOP_FLAG);
+        try {
+            if (timeout == null) {
+                consumeFuture.get();
+            } else {
+                consumeFuture.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancelledException) {
+                throw (CancelledException) e.getCause();
             }
+            throw new ExcelBuildException("An exception occurred while processing", e.getCause());
+        } catch (TimeoutException e) {
+            clear();
+            throw new ExcelBuildException("Build excel timeout, exceeded " + timeout.toMillis() + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            clear();
+            throw new ExcelBuildException("Interrupted while waiting for the build to finish", e);
+        }
+    }
+
+    private Throwable getConsumeException() {
+        try {
+            consumeFuture.getNow(null);
+            return null;
+        } catch (Exception e) {
+            return e.getCause();
         }
     }
 
-    private void putTrToQueue(Tr tr) {
+    private void putTrsToQueue(List<Tr> trs) {
+        // 各份数据的内存预算已在入队总队列时申请
+        long bytes = trs == STOP_FLAG || context.part ? 0 : this.estimateBytes(trs);
+        boolean queued = false;
         try {
-            boolean putSuccess = context.trWaitQueue.offer(tr, 1, TimeUnit.HOURS);
-            if (!putSuccess) {
+            if (bytes > 0 && !context.memoryBudget.acquire(bytes, this.getWaitNanos(), TimeUnit.NANOSECONDS, () -> cancelled)) {
+                this.checkNotCancelled();
+                throw new IllegalStateException("Acquire memory budget failure,timeout 1 hour.");
+            }
+            queued = context.trWaitQueue.offer(trs, this.getWaitNanos(), () -> cancelled || consumeFuture.isDone());
+            if (!queued) {
+                this.checkNotCancelled();
                 throw new IllegalStateException("Put tr to queue failure,timeout 1 hour.");
             }
+            if (bytes > 0 && consumeFuture.isCompletedExceptionally()) {
+                // 消费已异常终止，入队数据不会再被消费，释放其占用的预算
+                this.clearQueue();
+            }
         } catch (InterruptedException e) {
             if (receiveThread != null) {
                 receiveThread.interrupt();
             }
             throw new ExcelBuildException("Put tr to queue failure", e);
+        } finally {
+            if (!queued) {
+                this.releaseMemory(bytes);
+            }
+        }
+    }
+
+    /**
+     * 估算批量行占用的内存，未设置内存预算时不估算；标题数据量小且各份各自持有副本，不计入预算
+     *
+     * @param trs 行集合
+     * @return 估算字节数
+     */
+    private long estimateBytes(List<Tr> trs) {
+        if (context.memoryBudget == null || trs.isEmpty() || (titles != null && !titles.isEmpty() && trs.get(0) == titles.get(0))) {
+            return 0;
+        }
+        long bytes = 0;
+        for (Tr tr : trs) {
+            bytes += TR_ESTIMATED_BYTES;
+            if (tr instanceof CompactTr && ((CompactTr) tr).isCompact()) {
+                CompactTr compactTr = (CompactTr) tr;
+                for (int i = 0, size = compactTr.size(); i < size; i++) {
+                    bytes += COMPACT_CELL_ESTIMATED_BYTES;
+                    Object value = compactTr.getValue(i);
+                    if (value instanceof String) {
+                        bytes += (long) ((String) value).length() << 1;
+                    }
+                }
+                continue;
+            }
+            for (Td td : tr.getTdList()) {
+                bytes += TD_ESTIMATED_BYTES;
+                if (td.getContent() != null) {
+                    bytes += (long) td.getContent().length() << 1;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private void releaseMemory(long bytes) {
+        if (bytes > 0) {
+            context.memoryBudget.release(bytes);
+        }
+    }
+
+    private void clearQueue() {
+        List<Tr> trs;
+        while ((trs = context.trWaitQueue.poll()) != null) {
+            if (trs != STOP_FLAG) {
+                this.releaseMemory(this.estimateBytes(trs));
+            }
+        }
+    }
+
+    private void compressTempFilesIfNecessary() {
+        if (context.compressTempFiles && workbook instanceof SXSSFWorkbook) {
+            ((SXSSFWorkbook) workbook).setCompressTempFiles(true);
         }
     }
 
     private void storeToTempFile() {
+        this.flushEstimatedWidths();
+        if (directWriter != null) {
+            this.finishDirectWriter();
+            return;
+        }
         String suffix = isHssf ? Constants.XLS : Constants.XLSX;
         Path path = TempFileOperator.createTempFile("s_t_r_p", suffix);
         tempFilePaths.add(path);
@@ -300,7 +716,7 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
                         context.pathConsumer.accept(path);
                     }
                 }, context.executorService);
-                futures.add(future);
+                exportFutures.put(path, future);
             } else {
                 this.setColWidth(colWidthMap, sheet, maxColIndex);
                 this.createEmptySheetIfAbsent(workbook);
@@ -315,6 +731,94 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         }
     }
 
+    private void checkNotBoundToOutputStream() {
+        if (context.outputStream != null) {
+            throw new UnsupportedOperationException("Excel is written to the output stream, use build instead");
+        }
+    }
+
+    /**
+     * 开启直写，绑定输出流时直接写入输出流，否则写入结果文件
+     */
+    private void openDirectWriter() throws IOException {
+        if (context.outputStream != null) {
+            directWriter = new XlsxDirectWriter(new NonClosingOutputStream(context.outputStream));
+            return;
+        }
+        Path path = TempFileOperator.createTempFile("d_w_x", Constants.XLSX);
+        tempFilePaths.add(path);
+        directWriter = new XlsxDirectWriter(Files.newOutputStream(path));
+    }
+
+    private void finishDirectWriter() {
+        try (XlsxDirectWriter writer = directWriter) {
+            if (writer.getSheetCount() == 0) {
+                this.createSheet(sheetName);
+            }
+            writer.finish(((XSSFWorkbook) workbook).getStylesSource());
+        } catch (IOException e) {
+            clear();
+            throw new RuntimeException(e);
+        } finally {
+            directWriter = null;
+        }
+        if (context.outputStream == null && Objects.nonNull(context.pathConsumer)) {
+            context.pathConsumer.accept(tempFilePaths.get(tempFilePaths.size() - 1));
+        }
+    }
+
+    /**
+     * 复制已有文件的全部sheet，新行追加至最后一个sheet
+     */
+    private void copyRawSheets() throws IOException {
+        try (XlsxRawSheetCopier copier = rawSheetCopier) {
+            FreezePane freezePane = this.getFreezePane();
+            if (freezePane == null) {
+                copier.copySheets(directWriter, 0, 0, colWidthMap);
+            } else {
+                copier.copySheets(directWriter, freezePane.getColSplit(), freezePane.getRowSplit(), colWidthMap);
+            }
+            if (copier.getSheetCount() == 0) {
+                this.createSheet(sheetName);
+                return;
+            }
+            sheetNum = copier.getSheetCount() - 1;
+            rowNum = copier.getLastSheetRowCount();
+            count = rowNum;
+            log.info("Copied {} sheets of existing excel", copier.getSheetCount());
+        } finally {
+            rawSheetCopier = null;
+        }
+    }
+
+    private void endSheet() throws IOException {
+        this.flushEstimatedWidths();
+        if (directWriter != null) {
+            directWriter.endSheet();
+        } else {
+            this.setColWidth(colWidthMap, sheet, maxColIndex);
+        }
+    }
+
+    /**
+     * 估算列宽并入当前sheet列宽
+     */
+    private void flushEstimatedWidths() {
+        if (widthEstimator != null) {
+            widthEstimator.flushTo(colWidthMap);
+        }
+    }
+
+    @Override
+    protected void setColWidth(Map<Integer, Integer> colMaxWidthMap, Sheet sheet, int maxColIndex) {
+        if (widthEstimator != null && sheet instanceof SXSSFSheet) {
+            // 自适应宽度已由估算代替
+            this.setFixedColWidth(colMaxWidthMap, sheet);
+            return;
+        }
+        super.setColWidth(colMaxWidthMap, sheet, maxColIndex);
+    }
+
     private void createEmptySheetIfAbsent(Workbook tempWorkbook) {
         if (tempWorkbook.getNumberOfSheets() == 0) {
             this.createSheet(sheetName);
@@ -322,17 +826,31 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
     }
 
     private void freezePane(Sheet sheet) {
-        if (context.fixedTitles && titles != null) {
-            sheet.createFreezePane(0, titles.size());
+        FreezePane freezePane = this.getFreezePane();
+        if (freezePane != null) {
+            sheet.createFreezePane(freezePane.getColSplit(), freezePane.getRowSplit());
         }
+    }
+
+    private FreezePane getFreezePane() {
         if (context.freezePane != null) {
-            sheet.createFreezePane(context.freezePane.getColSplit(), context.freezePane.getRowSplit());
+            return context.freezePane;
         }
+        if (context.fixedTitles && titles != null) {
+            return new FreezePane(titles.size(), 0);
+        }
+        return null;
     }
 
-    private void initNewWorkbook() {
+    private void initNewWorkbook() throws IOException {
         workbook = null;
-        workbookType(isHssf ? WorkbookType.XLS : WorkbookType.SXLSX);
+        if (context.directWrite) {
+            workbookType(WorkbookType.XLSX);
+            this.openDirectWriter();
+        } else {
+            workbookType(isHssf ? WorkbookType.XLS : WorkbookType.SXLSX);
+            this.compressTempFilesIfNecessary();
+        }
         sheetNum = 0;
         rowNum = 0;
         count = 0;
@@ -347,14 +865,28 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         this.setTitles();
     }
 
-    private void setTitles() {
+    private void setTitles() throws IOException {
         for (Tr titleTr : titles) {
             appendRow(titleTr);
         }
     }
 
     private Sheet createSheet(String sheetName) {
-        Sheet sheet = workbook.createSheet(sheetName);
+        if (directWriter != null) {
+            FreezePane freezePane = this.getFreezePane();
+            if (freezePane == null) {
+                directWriter.startSheet(sheetName, 0, 0, colWidthMap);
+            } else {
+                directWriter.startSheet(sheetName, freezePane.getColSplit(), freezePane.getRowSplit(), colWidthMap);
+            }
+            return null;
+        }
+        Sheet sheet;
+        // 工作簿可能由多个sheet写入线程共享
+        synchronized (workbook) {
+            sheet = workbook.createSheet(sheetName);
+        }
+        createdSheetNames.add(sheetName);
         this.freezePane(sheet);
         // 默认自适应打印页
         PrintSetup ps = sheet.getPrintSetup();
@@ -364,31 +896,57 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         return sheet;
     }
 
-    private void appendRow(Tr tr) {
+    private void appendRow(Tr tr) throws IOException {
         tr.setIndex(rowNum);
-        tr.getTdList().forEach(td -> {
-            td.setRow(rowNum);
-        });
+        if (!(tr instanceof CompactTr) || !((CompactTr) tr).isCompact()) {
+            tr.getTdList().forEach(td -> {
+                td.setRow(rowNum);
+            });
+        }
         rowNum++;
         count++;
-        this.createRow(tr, sheet);
+        if (directWriter != null) {
+            if (rowNum == XlsxDirectWriter.WIDTH_SAMPLE_ROWS) {
+                // 直写器写出该行后即输出列宽
+                this.flushEstimatedWidths();
+            }
+            this.createRow(tr, directWriter);
+        } else {
+            this.createRow(tr, sheet);
+        }
     }
 
+    /**
+     * 打包各份文件，按份序等待导出完成后逐份以流写入，xlsx本身已压缩，采用STORED方式存储
+     *
+     * @param fileName 文件名称
+     * @return zip文件
+     */
     Path buildAsZip(String fileName) {
+        this.checkNotBoundToOutputStream();
         waiting();
-        this.storeToTempFile();
-        futures.forEach(CompletableFuture::join);
+        if (!this.isConcurrentParts()) {
+            this.storeToTempFile();
+        }
         String suffix = isHssf ? Constants.XLS : Constants.XLSX;
         Path zipFile = TempFileOperator.createTempFile(fileName, ".zip");
-        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zipFile.toFile())) {
             for (int i = 1, size = tempFilePaths.size(); i <= size; i++) {
                 Path path = tempFilePaths.get(i - 1);
-                ZipEntry zipEntry = new ZipEntry(fileName + " (" + i + ")" + suffix);
-                out.putNextEntry(zipEntry);
-                out.write(Files.readAllBytes(path));
-                out.closeEntry();
+                CompletableFuture<Void> exportFuture = exportFutures.get(path);
+                if (exportFuture != null) {
+                    exportFuture.join();
+                }
+                ZipArchiveEntry entry = new ZipArchiveEntry(fileName + " (" + i + ")" + suffix);
+                entry.setMethod(isHssf ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                out.putArchiveEntry(entry);
+                Files.copy(path, out);
+                out.closeArchiveEntry();
+                // 已打包的文件及时删除，释放磁盘空间
+                TempFileOperator.deleteTempFile(path);
             }
         } catch (IOException e) {
+            TempFileOperator.deleteTempFile(zipFile);
             throw new RuntimeException(e);
         } finally {
             clear();
@@ -398,16 +956,64 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         return zipFile;
     }
 
+    /**
+     * 取消构建，不等待已入队数据写入；写入线程感知取消后自行清理，避免与正在进行的写入竞争
+     */
     public void cancel() {
-        waiting();
+        this.stop = true;
+        this.cancelled = true;
+        parts.forEach(HtmlToExcelStreamFactory::cancel);
+        if (consumeFuture.completeExceptionally(new CancelledException("Build cancelled"))) {
+            // 释放阻塞于队列或内存预算的生产者
+            this.clearQueue();
+            if (context.memoryBudget != null) {
+                context.memoryBudget.wakeUp();
+            }
+            Thread thread = receiveThread;
+            if (thread != null && thread.isAlive()) {
+                thread.interrupt();
+                return;
+            }
+        }
         clear();
     }
 
     public void clear() {
-        if (receiveThread != null && receiveThread.isAlive()) {
-            receiveThread.interrupt();
+        if (context.cancellationToken != null) {
+            context.cancellationToken.removeOnCancel(cancelCallback);
+        }
+        Thread thread = receiveThread;
+        if (thread != null && thread.isAlive()) {
+            thread.interrupt();
+            // 写入线程中断后自行清理，等待其结束，避免并发关闭工作簿
+            if (thread != Thread.currentThread()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (directWriter != null) {
+            try {
+                directWriter.close();
+            } catch (IOException e) {
+                log.warn("Close direct writer failure", e);
+            }
+            directWriter = null;
+        }
+        if (rawSheetCopier != null) {
+            try {
+                rawSheetCopier.close();
+            } catch (IOException e) {
+                log.warn("Close raw sheet copier failure", e);
+            }
+            rawSheetCopier = null;
+        }
+        parts.forEach(HtmlToExcelStreamFactory::clear);
+        if (!context.sharedWorkbook) {
+            closeWorkbook();
         }
-        closeWorkbook();
         TempFileOperator.deleteTempFiles(tempFilePaths);
     }
 
@@ -416,7 +1022,15 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
      */
     static class HtmlToExcelStreamFactoryContext {
 
-        BlockingQueue<Tr> trWaitQueue = new LinkedBlockingQueue<>(Runtime.getRuntime().availableProcessors() * 2);
+        /**
+         * 默认待写入行队列容量
+         */
+        static final int DEFAULT_WAIT_QUEUE_SIZE = 2048;
+
+        /**
+         * 待写入行队列，元素为批量行，容量以行计
+         */
+        TrBatchQueue trWaitQueue = new TrBatchQueue(DEFAULT_WAIT_QUEUE_SIZE, WaitStrategy.blocking());
         /**
          * 线程池
          */
@@ -441,5 +1055,49 @@ class HtmlToExcelStreamFactory extends AbstractExcelFactory {
         };
 
         FreezePane freezePane;
+        /**
+         * 是否直写xlsx，不经由SXSSF
+         */
+        boolean directWrite;
+        /**
+         * 工作簿是否由外部共享持有，清理时不予关闭
+         */
+        boolean sharedWorkbook;
+        /**
+         * 目标输出流，设置后直写内容随生成写出
+         */
+        OutputStream outputStream;
+        /**
+         * 待追加的已有xlsx，直写时按原始行复制
+         */
+        Path rawCopyExcel;
+        /**
+         * 取消令牌
+         */
+        CancellationToken cancellationToken;
+        /**
+         * 内存预算
+         */
+        MemoryBudget memoryBudget;
+        /**
+         * 是否压缩SXSSF临时文件
+         */
+        boolean compressTempFiles;
+        /**
+         * 设置容量时同时构建的份数
+         */
+        int concurrentParts;
+        /**
+         * 是否为并发构建中的一份
+         */
+        boolean part;
+        /**
+         * 自动宽度估算时全部估算的行数
+         */
+        int widthSampleRows;
+        /**
+         * 自动宽度估算时其后的抽样间隔
+         */
+        int widthSampleInterval;
     }
 }
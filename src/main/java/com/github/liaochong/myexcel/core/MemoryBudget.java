@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 内存预算，限制流式构建中待写入数据的估算内存占用，超出预算时阻塞追加方，
+ * 同一实例可在多个构建间共享，用于限制整体内存上限
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class MemoryBudget {
+
+    private final long maxBytes;
+
+    private long usedBytes;
+
+    public MemoryBudget(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Max bytes must be greater than 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 申请内存，预算不足时等待释放；预算为空时总是允许，避免单批次超出预算时永久阻塞
+     *
+     * @param bytes     申请字节数
+     * @param timeout   超时时间
+     * @param unit      时间单位
+     * @param cancelled 是否已取消，取消后不再等待
+     * @return 是否申请成功
+     * @throws InterruptedException InterruptedException
+     */
+    synchronized boolean acquire(long bytes, long timeout, TimeUnit unit, BooleanSupplier cancelled) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (usedBytes > 0 && usedBytes + bytes > maxBytes) {
+            if (remaining <= 0 || cancelled.getAsBoolean()) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        usedBytes += bytes;
+        return true;
+    }
+
+    synchronized void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        usedBytes = Math.max(0, usedBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * 唤醒等待方，以便其检查取消状态
+     */
+    synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+}
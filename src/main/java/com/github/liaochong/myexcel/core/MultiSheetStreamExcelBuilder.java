@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多sheet流式构建器，每个sheet拥有独立的数据类型、样式及写入队列，各sheet可并发追加，
+ * 最终写入同一个xlsx工作簿
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class MultiSheetStreamExcelBuilder implements Closeable {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MultiSheetStreamExcelBuilder.class);
+
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(1);
+
+    private final List<DefaultStreamExcelBuilder<?>> sheetBuilders = new ArrayList<>();
+
+    private final Set<String> sheetNames = new HashSet<>();
+
+    private MultiSheetStreamExcelBuilder() {
+    }
+
+    public static MultiSheetStreamExcelBuilder create() {
+        return new MultiSheetStreamExcelBuilder();
+    }
+
+    /**
+     * 获取sheet构建器，配置后需调用start方法开启，sheet在工作簿中的顺序与获取顺序一致；
+     * capacity、concurrentParts、directWrite、writeTo、buildAsPaths、buildAsZip不受支持，调用时抛出UnsupportedOperationException，
+     * 工作簿由本构建器关闭
+     *
+     * @param dataType  数据的类类型
+     * @param sheetName sheet名称
+     * @param <T>       T
+     * @return DefaultStreamExcelBuilder
+     */
+    public synchronized <T> DefaultStreamExcelBuilder<T> sheet(Class<T> dataType, String sheetName) {
+        if (sheetName == null || sheetName.isEmpty()) {
+            throw new IllegalArgumentException("Sheet name cannot be empty");
+        }
+        if (!sheetNames.add(sheetName)) {
+            throw new IllegalArgumentException("Duplicate sheet name:" + sheetName);
+        }
+        DefaultStreamExcelBuilder<T> sheetBuilder = DefaultStreamExcelBuilder.of(dataType, workbook).multiSheet(sheetName);
+        sheetBuilders.add(sheetBuilder);
+        return sheetBuilder;
+    }
+
+    /**
+     * 构建，等待所有sheet写入完成
+     *
+     * @return Workbook
+     */
+    public synchronized Workbook build() {
+        for (DefaultStreamExcelBuilder<?> sheetBuilder : sheetBuilders) {
+            if (!sheetBuilder.isStarted()) {
+                throw new IllegalStateException("Sheet builder has not been started");
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        int index = 0;
+        for (DefaultStreamExcelBuilder<?> sheetBuilder : sheetBuilders) {
+            sheetBuilder.build();
+            // 各sheet由各自写入线程创建，按获取顺序重新排列
+            for (String sheetName : sheetBuilder.getCreatedSheetNames()) {
+                workbook.setSheetOrder(sheetName, index++);
+            }
+        }
+        if (workbook.getNumberOfSheets() > 0) {
+            workbook.setActiveSheet(0);
+        }
+        log.info("Build multi-sheet Excel success,takes {} ms", System.currentTimeMillis() - startTime);
+        return workbook;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (DefaultStreamExcelBuilder<?> sheetBuilder : sheetBuilders) {
+            sheetBuilder.close();
+        }
+        sheetBuilders.clear();
+        workbook.dispose();
+        workbook.close();
+    }
+}
@@ -15,6 +15,7 @@
 package com.github.liaochong.myexcel.core;
 
 import com.github.liaochong.myexcel.core.cache.StringsCache;
+import com.github.liaochong.myexcel.exception.CancelledException;
 import com.github.liaochong.myexcel.exception.ExcelReadException;
 import com.github.liaochong.myexcel.exception.SaxReadException;
 import com.github.liaochong.myexcel.exception.StopReadException;
@@ -129,6 +130,17 @@ public class SaxExcelReader<T> {
         return this;
     }
 
+    /**
+     * 取消令牌，令牌取消或超过截止时间后停止读取并抛出CancelledException
+     *
+     * @param cancellationToken 取消令牌
+     * @return SaxExcelReader
+     */
+    public SaxExcelReader<T> cancellationToken(CancellationToken cancellationToken) {
+        this.readConfig.cancellationToken = cancellationToken;
+        return this;
+    }
+
     public List<T> read(InputStream fileInputStream) {
         doRead(fileInputStream);
         return result;
@@ -180,11 +192,34 @@ public class SaxExcelReader<T> {
     }
 
     private void doRead(InputStream fileInputStream) {
-        Path path = TempFileOperator.convertToFile(fileInputStream);
+        InputStream is = FileMagic.prepareToCheckMagic(fileInputStream);
+        FileMagic fm;
         try {
-            doRead(path.toFile());
-        } finally {
-            TempFileOperator.deleteTempFile(path);
+            fm = FileMagic.valueOf(is);
+        } catch (Throwable throwable) {
+            throw new SaxReadException("Fail to get excel magic", throwable);
+        }
+        try {
+            switch (fm) {
+                case OOXML:
+                    // xlsx需随机访问zip条目，仅此格式落地为临时文件
+                    Path path = TempFileOperator.convertToFile(is);
+                    try {
+                        doReadXlsx(path.toFile());
+                    } finally {
+                        TempFileOperator.deleteTempFile(path);
+                    }
+                    break;
+                case OLE2:
+                    doReadXls(is);
+                    break;
+                default:
+                    doReadCsv(is);
+            }
+        } catch (CancelledException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SaxReadException("Fail to read excel", e);
         }
     }
 
@@ -206,6 +241,8 @@ public class SaxExcelReader<T> {
                 default:
                     doReadCsv(file);
             }
+        } catch (CancelledException e) {
+            throw e;
         } catch (Throwable e) {
             throw new SaxReadException("Fail to read excel", e);
         }
@@ -221,11 +258,23 @@ public class SaxExcelReader<T> {
         }
     }
 
+    private void doReadXls(InputStream is) {
+        try {
+            new HSSFSaxReadHandler<>(is, result, readConfig).process();
+        } catch (StopReadException e) {
+            // do nothing
+        } catch (IOException e) {
+            throw new SaxReadException("Fail to read xls inputStream", e);
+        }
+    }
+
     private void doReadXlsx(File file) {
         try (OPCPackage p = OPCPackage.open(file, PackageAccess.READ)) {
             process(p);
         } catch (StopReadException e) {
             // do nothing
+        } catch (CancelledException e) {
+            throw e;
         } catch (Exception e) {
             throw new SaxReadException("Fail to read xlsx file:" + file.getName(), e);
         }
@@ -236,11 +285,25 @@ public class SaxExcelReader<T> {
             new CsvReadHandler<>(Files.newInputStream(file.toPath()), readConfig, result).read();
         } catch (StopReadException e) {
             // do nothing
+        } catch (CancelledException e) {
+            throw e;
         } catch (Throwable throwable) {
             throw new ExcelReadException("Fail to read csv file:" + file.getName(), throwable);
         }
     }
 
+    private void doReadCsv(InputStream is) {
+        try {
+            new CsvReadHandler<>(is, readConfig, result).read();
+        } catch (StopReadException e) {
+            // do nothing
+        } catch (CancelledException e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new ExcelReadException("Fail to read csv inputStream", throwable);
+        }
+    }
+
     /**
      * Initiates the processing of the XLS workbook file to CSV.
      *
@@ -355,6 +418,8 @@ public class SaxExcelReader<T> {
             log.info("Start read excel, sheet:{},index:{}", sheetName, sheetIndex);
         };
 
+        private CancellationToken cancellationToken;
+
         public ReadConfig(int sheetIndex) {
             sheetIndexs.add(sheetIndex);
         }
@@ -363,6 +428,10 @@ public class SaxExcelReader<T> {
             return this.dataType;
         }
 
+        public CancellationToken getCancellationToken() {
+            return this.cancellationToken;
+        }
+
         public Set<String> getSheetNames() {
             return this.sheetNames;
         }
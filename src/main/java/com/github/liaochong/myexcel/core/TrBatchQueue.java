@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import com.github.liaochong.myexcel.core.parser.Tr;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 待写入行队列，元素为批量行，容量以行计；队列为空时总是允许入队，避免单批次超出容量时永久阻塞，
+ * 因此待写入行数不超过容量与单批次行数中的较大者
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+class TrBatchQueue {
+
+    private final Queue<List<Tr>> batches = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger rowCount = new AtomicInteger();
+
+    private final int capacity;
+
+    private final WaitStrategy waitStrategy;
+
+    private final BooleanSupplier notEmpty = () -> !batches.isEmpty();
+
+    TrBatchQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Wait queue size must be greater than 0");
+        }
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * 入队，容量不足时等待写入线程消费
+     *
+     * @param trs          批量行
+     * @param timeoutNanos 最长等待时间
+     * @param abandoned    是否已放弃等待，如消费已终止
+     * @return 是否入队成功
+     * @throws InterruptedException InterruptedException
+     */
+    boolean offer(List<Tr> trs, long timeoutNanos, BooleanSupplier abandoned) throws InterruptedException {
+        int size = trs.size();
+        BooleanSupplier ready = () -> {
+            int rows = rowCount.get();
+            return rows == 0 || rows + size <= capacity || abandoned.getAsBoolean();
+        };
+        if (!waitStrategy.await(ready, timeoutNanos)) {
+            return false;
+        }
+        rowCount.addAndGet(size);
+        batches.add(trs);
+        waitStrategy.signalAll();
+        return true;
+    }
+
+    /**
+     * 出队，无数据时等待
+     *
+     * @param timeoutNanos 最长等待时间
+     * @return 批量行，超时为null
+     * @throws InterruptedException InterruptedException
+     */
+    List<Tr> poll(long timeoutNanos) throws InterruptedException {
+        if (!waitStrategy.await(notEmpty, timeoutNanos)) {
+            return null;
+        }
+        return this.poll();
+    }
+
+    /**
+     * 不等待出队
+     *
+     * @return 批量行，无数据时为null
+     */
+    List<Tr> poll() {
+        List<Tr> trs = batches.poll();
+        if (trs != null) {
+            rowCount.addAndGet(-trs.size());
+            waitStrategy.signalAll();
+        }
+        return trs;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 流式构建中追加方与写入线程交接数据时的等待策略
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public interface WaitStrategy {
+
+    /**
+     * 等待至条件满足
+     *
+     * @param ready        条件
+     * @param timeoutNanos 最长等待时间，纳秒
+     * @return 条件是否满足，超时为false
+     * @throws InterruptedException InterruptedException
+     */
+    boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException;
+
+    /**
+     * 条件可能已变化，唤醒等待方
+     */
+    void signalAll();
+
+    /**
+     * 阻塞等待，等待期间不占用CPU，默认策略
+     *
+     * @return WaitStrategy
+     */
+    static WaitStrategy blocking() {
+        return new BlockingWaitStrategy();
+    }
+
+    /**
+     * 先自旋、让出CPU，仍未满足时短暂休眠，交接延迟低，适用于高吞吐且核数充足的场景
+     *
+     * @return WaitStrategy
+     */
+    static WaitStrategy yielding() {
+        return new YieldingWaitStrategy();
+    }
+
+    final class BlockingWaitStrategy implements WaitStrategy {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition changed = lock.newCondition();
+        /**
+         * 等待方数量，无等待方时唤醒不加锁
+         */
+        private volatile int waiters;
+
+        private BlockingWaitStrategy() {
+        }
+
+        @Override
+        public boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException {
+            if (ready.getAsBoolean()) {
+                return true;
+            }
+            long remaining = timeoutNanos;
+            lock.lockInterruptibly();
+            waiters++;
+            try {
+                while (!ready.getAsBoolean()) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+                return true;
+            } finally {
+                waiters--;
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class YieldingWaitStrategy implements WaitStrategy {
+
+        /**
+         * 单核时自旋无益，直接让出CPU
+         */
+        private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+        private static final int YIELD_TRIES = 100;
+
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+        private YieldingWaitStrategy() {
+        }
+
+        @Override
+        public boolean await(BooleanSupplier ready, long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            int tries = 0;
+            while (!ready.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (deadline - System.nanoTime() <= 0) {
+                    return false;
+                }
+                if (tries < SPIN_TRIES) {
+                    tries++;
+                } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+                    tries++;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+}
@@ -0,0 +1,695 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import com.github.liaochong.myexcel.core.parser.CompactTr;
+import com.github.liaochong.myexcel.core.parser.Td;
+import com.github.liaochong.myexcel.utils.StringUtil;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.model.StylesTable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * xlsx直写器，不经由SXSSF，将行数据直接以SpreadsheetML写入zip输出流，不产生临时文件
+ * <p>
+ * 列宽需写在sheetData之前，因此每个sheet先缓存前若干行用以统计列宽，此后的行直接写出
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+class XlsxDirectWriter implements Closeable {
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    /**
+     * 列宽取样行数
+     */
+    static final int WIDTH_SAMPLE_ROWS = 100;
+
+    private final ZipOutputStream zipOut;
+
+    private final Writer writer;
+
+    private final List<String> sheetNames = new ArrayList<>();
+
+    private final List<String> columnNames = new ArrayList<>();
+
+    private final StringBuilder rowBuilder = new StringBuilder(1024);
+    /**
+     * 列宽取样期间缓存的行
+     */
+    private StringBuilder pendingRows;
+
+    private boolean sheetStarted;
+
+    private int colSplit;
+
+    private int rowSplit;
+
+    private Map<Integer, Integer> colWidthMap;
+    /**
+     * 已有文件中的视图、格式及列定义，原样写出，优先于生成的定义
+     */
+    private String rawSheetViews;
+
+    private String rawSheetFormatPr;
+
+    private final TreeMap<Integer, RawCol> rawCols = new TreeMap<>();
+
+    private final List<String> mergedRegions = new ArrayList<>();
+
+    private final List<String[]> dropDownLists = new ArrayList<>();
+
+    private final List<String[]> hyperlinks = new ArrayList<>();
+
+    XlsxDirectWriter(OutputStream outputStream) {
+        this.zipOut = new ZipOutputStream(outputStream);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zipOut, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**
+     * 开始新的sheet
+     *
+     * @param sheetName   sheet名称
+     * @param colSplit    冻结列
+     * @param rowSplit    冻结行
+     * @param colWidthMap 列宽，取样结束或sheet结束时读取
+     */
+    void startSheet(String sheetName, int colSplit, int rowSplit, Map<Integer, Integer> colWidthMap) {
+        if (sheetStarted) {
+            throw new IllegalStateException("The previous sheet has not ended");
+        }
+        WorkbookUtil.validateSheetName(sheetName);
+        sheetNames.add(sheetName);
+        this.colSplit = colSplit;
+        this.rowSplit = rowSplit;
+        this.colWidthMap = colWidthMap;
+        this.pendingRows = new StringBuilder();
+        this.sheetStarted = true;
+    }
+
+    /**
+     * 写入行，单元格需已计算好样式id
+     *
+     * @param rowIndex 行索引
+     * @param height   行高
+     * @param hidden   是否隐藏
+     * @param tds      单元格
+     * @param styleIds 单元格样式id，与tds一一对应
+     * @throws IOException IOException
+     */
+    void writeRow(int rowIndex, float height, boolean hidden, List<Td> tds, int[] styleIds) throws IOException {
+        StringBuilder row = rowBuilder;
+        row.setLength(0);
+        row.append("<row r=\"").append(rowIndex + 1).append("\" ht=\"").append(height).append("\" customHeight=\"1\"");
+        if (hidden) {
+            row.append(" hidden=\"1\"");
+        }
+        row.append('>');
+        for (int i : this.getColumnOrder(tds)) {
+            Td td = tds.get(i);
+            this.appendCell(row, td, styleIds[i]);
+            for (int j = td.getCol() + 1, colBound = td.getColBound(); j <= colBound; j++) {
+                this.appendBlankCell(row, td.getRow(), j, styleIds[i]);
+            }
+            if (td.getColSpan() > 0 || td.getRowSpan() > 0) {
+                mergedRegions.add(this.getRef(td.getRow(), td.getCol()) + ":" + this.getRef(td.getRowBound(), td.getColBound()));
+            }
+        }
+        row.append("</row>");
+        this.writeRawRow(rowIndex, row);
+    }
+
+    /**
+     * 写入紧凑行，各列依次写出，不经由单元格对象
+     *
+     * @param rowIndex 行索引
+     * @param height   行高
+     * @param hidden   是否隐藏
+     * @param tr       紧凑行
+     * @param styleIds 单元格样式id，与列一一对应
+     * @throws IOException IOException
+     */
+    void writeCompactRow(int rowIndex, float height, boolean hidden, CompactTr tr, int[] styleIds) throws IOException {
+        StringBuilder row = rowBuilder;
+        row.setLength(0);
+        row.append("<row r=\"").append(rowIndex + 1).append("\" ht=\"").append(height).append("\" customHeight=\"1\"");
+        if (hidden) {
+            row.append(" hidden=\"1\"");
+        }
+        row.append('>');
+        for (int i = 0, size = tr.size(); i < size; i++) {
+            Object value = tr.getValue(i);
+            switch (tr.getContentType(i)) {
+                case DOUBLE:
+                    this.appendNumericCell(row, rowIndex, i, styleIds[i], value == null ? null : Double.parseDouble((String) value));
+                    break;
+                case DATE:
+                    Double date = null;
+                    if (value instanceof Date) {
+                        date = DateUtil.getExcelDate((Date) value);
+                    } else if (value instanceof LocalDateTime) {
+                        date = DateUtil.getExcelDate((LocalDateTime) value);
+                    } else if (value instanceof LocalDate) {
+                        date = DateUtil.getExcelDate((LocalDate) value);
+                    }
+                    this.appendNumericCell(row, rowIndex, i, styleIds[i], date);
+                    break;
+                case BOOLEAN:
+                    this.appendBooleanCell(row, rowIndex, i, styleIds[i], (String) value);
+                    break;
+                default:
+                    this.appendStringCell(row, rowIndex, i, styleIds[i], (String) value);
+                    break;
+            }
+        }
+        row.append("</row>");
+        this.writeRawRow(rowIndex, row);
+    }
+
+    /**
+     * 写入已序列化的行，单元格引用及样式id需与本文件一致
+     *
+     * @param rowIndex 行索引
+     * @param row      行xml
+     * @throws IOException IOException
+     */
+    void writeRawRow(int rowIndex, CharSequence row) throws IOException {
+        if (pendingRows != null) {
+            pendingRows.append(row);
+            if (rowIndex + 1 >= WIDTH_SAMPLE_ROWS) {
+                this.writeSheetHead();
+            }
+        } else {
+            writer.append(row);
+        }
+    }
+
+    /**
+     * 设置当前sheet的原始视图，需在写入行之前调用
+     *
+     * @param sheetViews sheetViews元素xml
+     */
+    void setRawSheetViews(String sheetViews) {
+        this.rawSheetViews = sheetViews;
+    }
+
+    /**
+     * 设置当前sheet的原始格式，需在写入行之前调用
+     *
+     * @param sheetFormatPr sheetFormatPr元素xml
+     */
+    void setRawSheetFormatPr(String sheetFormatPr) {
+        this.rawSheetFormatPr = sheetFormatPr;
+    }
+
+    /**
+     * 添加当前sheet的原始列定义，宽度、隐藏、样式等属性原样保留，需在写入行之前调用；
+     * 其覆盖的列不再按列宽生成定义
+     *
+     * @param min 起始列，从1开始
+     * @param max 结束列，从1开始
+     * @param col col元素xml
+     */
+    void addRawCol(int min, int max, String col) {
+        rawCols.put(min, new RawCol(max, col));
+    }
+
+    /**
+     * 添加当前sheet的合并区域
+     *
+     * @param ref 区域引用，如A1:B2
+     */
+    void addMergedRegion(String ref) {
+        mergedRegions.add(ref);
+    }
+
+    /**
+     * 结束当前sheet
+     *
+     * @throws IOException IOException
+     */
+    void endSheet() throws IOException {
+        if (!sheetStarted) {
+            return;
+        }
+        if (pendingRows != null) {
+            this.writeSheetHead();
+        }
+        writer.write("</sheetData>");
+        if (!mergedRegions.isEmpty()) {
+            writer.append("<mergeCells count=\"").append(String.valueOf(mergedRegions.size())).append("\">");
+            for (String mergedRegion : mergedRegions) {
+                writer.append("<mergeCell ref=\"").append(mergedRegion).append("\"/>");
+            }
+            writer.write("</mergeCells>");
+        }
+        if (!dropDownLists.isEmpty()) {
+            writer.append("<dataValidations count=\"").append(String.valueOf(dropDownLists.size())).append("\">");
+            StringBuilder formula = new StringBuilder();
+            for (String[] dropDownList : dropDownLists) {
+                formula.setLength(0);
+                appendEscaped(formula, dropDownList[1]);
+                writer.append("<dataValidation type=\"list\" allowBlank=\"1\" showErrorMessage=\"1\" sqref=\"")
+                        .append(dropDownList[0]).append("\"><formula1>\"").append(formula).append("\"</formula1></dataValidation>");
+            }
+            writer.write("</dataValidations>");
+        }
+        if (!hyperlinks.isEmpty()) {
+            writer.write("<hyperlinks>");
+            for (int i = 0, size = hyperlinks.size(); i < size; i++) {
+                writer.append("<hyperlink ref=\"").append(hyperlinks.get(i)[0]).append("\" r:id=\"rId").append(String.valueOf(i + 1)).append("\"/>");
+            }
+            writer.write("</hyperlinks>");
+        }
+        // 与SXSSF一致，默认自适应打印页
+        writer.write("<pageMargins left=\"0.7\" right=\"0.7\" top=\"0.75\" bottom=\"0.75\" header=\"0.3\" footer=\"0.3\"/>"
+                + "<pageSetup fitToWidth=\"1\" fitToHeight=\"1\"/></worksheet>");
+        this.closeEntry();
+        if (!hyperlinks.isEmpty()) {
+            this.putEntry("xl/worksheets/_rels/sheet" + sheetNames.size() + ".xml.rels");
+            writer.append(XML_HEADER).append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+            StringBuilder target = new StringBuilder();
+            for (int i = 0, size = hyperlinks.size(); i < size; i++) {
+                target.setLength(0);
+                appendEscaped(target, hyperlinks.get(i)[1]);
+                writer.append("<Relationship Id=\"rId").append(String.valueOf(i + 1))
+                        .append("\" Type=\"").append(REL_NS).append("/hyperlink\" Target=\"").append(target)
+                        .append("\" TargetMode=\"External\"/>");
+            }
+            writer.write("</Relationships>");
+            this.closeEntry();
+        }
+        mergedRegions.clear();
+        dropDownLists.clear();
+        hyperlinks.clear();
+        colWidthMap = null;
+        rawSheetViews = null;
+        rawSheetFormatPr = null;
+        rawCols.clear();
+        sheetStarted = false;
+    }
+
+    /**
+     * 写入样式表、工作簿等部件，完成整个文件
+     *
+     * @param stylesTable 样式表
+     * @throws IOException IOException
+     */
+    void finish(StylesTable stylesTable) throws IOException {
+        this.endSheet();
+        if (sheetNames.isEmpty()) {
+            throw new IllegalStateException("At least one sheet is required");
+        }
+        this.putEntry("xl/styles.xml");
+        writer.flush();
+        stylesTable.writeTo(zipOut);
+        this.closeEntry();
+
+        this.putEntry("xl/workbook.xml");
+        writer.append(XML_HEADER).append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\"><sheets>");
+        StringBuilder name = new StringBuilder();
+        for (int i = 1, size = sheetNames.size(); i <= size; i++) {
+            name.setLength(0);
+            appendEscaped(name, sheetNames.get(i - 1));
+            writer.append("<sheet name=\"").append(name).append("\" sheetId=\"").append(String.valueOf(i))
+                    .append("\" r:id=\"rId").append(String.valueOf(i)).append("\"/>");
+        }
+        writer.write("</sheets></workbook>");
+        this.closeEntry();
+
+        this.putEntry("xl/_rels/workbook.xml.rels");
+        writer.append(XML_HEADER).append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+        for (int i = 1, size = sheetNames.size(); i <= size; i++) {
+            writer.append("<Relationship Id=\"rId").append(String.valueOf(i)).append("\" Type=\"").append(REL_NS)
+                    .append("/worksheet\" Target=\"worksheets/sheet").append(String.valueOf(i)).append(".xml\"/>");
+        }
+        writer.append("<Relationship Id=\"rId").append(String.valueOf(sheetNames.size() + 1)).append("\" Type=\"").append(REL_NS)
+                .append("/styles\" Target=\"styles.xml\"/></Relationships>");
+        this.closeEntry();
+
+        this.putEntry("_rels/.rels");
+        writer.append(XML_HEADER).append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">")
+                .append("<Relationship Id=\"rId1\" Type=\"").append(REL_NS)
+                .append("/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+        this.closeEntry();
+
+        this.putEntry("[Content_Types].xml");
+        writer.append(XML_HEADER).append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+                .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+                .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+                .append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>")
+                .append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        for (int i = 1, size = sheetNames.size(); i <= size; i++) {
+            writer.append("<Override PartName=\"/xl/worksheets/sheet").append(String.valueOf(i))
+                    .append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        writer.write("</Types>");
+        this.closeEntry();
+        zipOut.finish();
+    }
+
+    int getSheetCount() {
+        return sheetNames.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOut.close();
+    }
+
+    private void writeSheetHead() throws IOException {
+        this.putEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml");
+        writer.append(XML_HEADER).append("<worksheet xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\">");
+        this.writeSheetViews();
+        writer.write(rawSheetFormatPr == null ? "<sheetFormatPr defaultRowHeight=\"15.0\"/>" : rawSheetFormatPr);
+        this.writeCols();
+        writer.write("<sheetData>");
+        writer.append(pendingRows);
+        pendingRows = null;
+    }
+
+    private void writeSheetViews() throws IOException {
+        if (rawSheetViews != null) {
+            writer.write(rawSheetViews);
+            return;
+        }
+        writer.write("<sheetViews><sheetView workbookViewId=\"0\"");
+        if (sheetNames.size() == 1) {
+            writer.write(" tabSelected=\"1\"");
+        }
+        if (colSplit > 0 || rowSplit > 0) {
+            String activePane = colSplit > 0 ? (rowSplit > 0 ? "bottomRight" : "topRight") : "bottomLeft";
+            writer.write("><pane");
+            if (colSplit > 0) {
+                writer.append(" xSplit=\"").append(String.valueOf(colSplit)).append('"');
+            }
+            if (rowSplit > 0) {
+                writer.append(" ySplit=\"").append(String.valueOf(rowSplit)).append('"');
+            }
+            writer.append(" topLeftCell=\"").append(this.getRef(rowSplit, colSplit)).append("\" activePane=\"").append(activePane)
+                    .append("\" state=\"frozen\"/><selection pane=\"").append(activePane).append("\"/></sheetView></sheetViews>");
+        } else {
+            writer.write("/></sheetViews>");
+        }
+    }
+
+    /**
+     * 写出列定义，原始列定义原样写出，其余列按列宽生成，按起始列排列
+     */
+    private void writeCols() throws IOException {
+        TreeMap<Integer, String> cols = new TreeMap<>();
+        rawCols.forEach((min, rawCol) -> cols.put(min, rawCol.xml));
+        if (colWidthMap != null) {
+            for (Map.Entry<Integer, Integer> entry : colWidthMap.entrySet()) {
+                int col = entry.getKey() + 1;
+                Map.Entry<Integer, RawCol> rawCol = rawCols.floorEntry(col);
+                if (rawCol != null && rawCol.getValue().max >= col) {
+                    continue;
+                }
+                int contentLength = entry.getValue() << 1;
+                if (contentLength > 255) {
+                    contentLength = 255;
+                }
+                cols.put(col, "<col min=\"" + col + "\" max=\"" + col + "\" width=\"" + contentLength + "\" customWidth=\"1\"/>");
+            }
+        }
+        if (cols.isEmpty()) {
+            return;
+        }
+        writer.write("<cols>");
+        for (String col : cols.values()) {
+            writer.write(col);
+        }
+        writer.write("</cols>");
+    }
+
+    private void appendCell(StringBuilder row, Td td, int styleId) {
+        if (td.isFormula()) {
+            this.appendCellStart(row, td.getRow(), td.getCol(), styleId, null);
+            row.append("><f>");
+            appendEscaped(row, td.getContent());
+            row.append("</f></c>");
+            return;
+        }
+        String content = td.getContent();
+        switch (td.getTdContentType()) {
+            case DOUBLE:
+                this.appendNumericCell(row, td.getRow(), td.getCol(), styleId, content == null ? null : Double.parseDouble(content));
+                break;
+            case DATE:
+                Double date = null;
+                if (td.getDate() != null) {
+                    date = DateUtil.getExcelDate(td.getDate());
+                } else if (td.getLocalDateTime() != null) {
+                    date = DateUtil.getExcelDate(td.getLocalDateTime());
+                } else if (td.getLocalDate() != null) {
+                    date = DateUtil.getExcelDate(td.getLocalDate());
+                }
+                this.appendNumericCell(row, td.getRow(), td.getCol(), styleId, date);
+                break;
+            case BOOLEAN:
+                this.appendBooleanCell(row, td.getRow(), td.getCol(), styleId, content);
+                break;
+            case NUMBER_DROP_DOWN_LIST:
+                String firstEle = this.addDropDownList(td, content);
+                this.appendNumericCell(row, td.getRow(), td.getCol(), styleId, firstEle == null ? null : Double.parseDouble(firstEle));
+                break;
+            case BOOLEAN_DROP_DOWN_LIST:
+                this.appendBooleanCell(row, td.getRow(), td.getCol(), styleId, this.addDropDownList(td, content));
+                break;
+            case DROP_DOWN_LIST:
+                this.appendStringCell(row, td.getRow(), td.getCol(), styleId, this.addDropDownList(td, content));
+                break;
+            case LINK_URL:
+            case LINK_EMAIL:
+                if (StringUtil.isNotBlank(content) && td.getLink() != null) {
+                    hyperlinks.add(new String[]{this.getRef(td.getRow(), td.getCol()), td.getLink()});
+                }
+                this.appendStringCell(row, td.getRow(), td.getCol(), styleId, StringUtil.isBlank(content) ? null : content);
+                break;
+            case IMAGE:
+                if (td.getFile() != null) {
+                    throw new UnsupportedOperationException("Direct write does not support image");
+                }
+                this.appendBlankCell(row, td.getRow(), td.getCol(), styleId);
+                break;
+            default:
+                this.appendStringCell(row, td.getRow(), td.getCol(), styleId, content);
+                break;
+        }
+    }
+
+    private void appendStringCell(StringBuilder row, int rowIndex, int colIndex, int styleId, String value) {
+        if (value == null) {
+            this.appendBlankCell(row, rowIndex, colIndex, styleId);
+            return;
+        }
+        this.appendCellStart(row, rowIndex, colIndex, styleId, "inlineStr");
+        row.append("><is><t xml:space=\"preserve\">");
+        appendEscapedText(row, value);
+        row.append("</t></is></c>");
+    }
+
+    private void appendNumericCell(StringBuilder row, int rowIndex, int colIndex, int styleId, Double value) {
+        if (value == null) {
+            this.appendBlankCell(row, rowIndex, colIndex, styleId);
+            return;
+        }
+        double v = value;
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            // 与POI一致，非数值写为错误值
+            this.appendCellStart(row, rowIndex, colIndex, styleId, "e");
+            row.append("><v>").append(Double.isNaN(v) ? "#NUM!" : "#DIV/0!").append("</v></c>");
+            return;
+        }
+        this.appendCellStart(row, rowIndex, colIndex, styleId, null);
+        row.append("><v>").append(v).append("</v></c>");
+    }
+
+    private void appendBooleanCell(StringBuilder row, int rowIndex, int colIndex, int styleId, String value) {
+        if (value == null) {
+            this.appendBlankCell(row, rowIndex, colIndex, styleId);
+            return;
+        }
+        this.appendCellStart(row, rowIndex, colIndex, styleId, "b");
+        row.append("><v>").append(Boolean.parseBoolean(value) ? '1' : '0').append("</v></c>");
+    }
+
+    private void appendBlankCell(StringBuilder row, int rowIndex, int colIndex, int styleId) {
+        this.appendCellStart(row, rowIndex, colIndex, styleId, null);
+        row.append("/>");
+    }
+
+    private void appendCellStart(StringBuilder row, int rowIndex, int colIndex, int styleId, String type) {
+        row.append("<c r=\"").append(this.getColumnName(colIndex)).append(rowIndex + 1).append('"');
+        if (styleId > 0) {
+            row.append(" s=\"").append(styleId).append('"');
+        }
+        if (type != null) {
+            row.append(" t=\"").append(type).append('"');
+        }
+    }
+
+    private String addDropDownList(Td td, String content) {
+        if (content.length() > 250) {
+            throw new IllegalArgumentException("The total number of words in the drop-down list should not exceed 250.");
+        }
+        String[] list = content.split(",");
+        String sqref = this.getRef(td.getRow(), td.getCol()) + ":" + this.getRef(td.getRowBound(), td.getColBound());
+        dropDownLists.add(new String[]{sqref, String.join(",", list)});
+        return list.length > 0 ? list[0] : null;
+    }
+
+    /**
+     * 单元格需按列升序写出，行合并暂存的单元格位于末尾，需重新排序
+     */
+    private Integer[] getColumnOrder(List<Td> tds) {
+        Integer[] order = new Integer[tds.size()];
+        boolean sorted = true;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            if (i > 0 && tds.get(i).getCol() < tds.get(i - 1).getCol()) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            Arrays.sort(order, Comparator.comparingInt(i -> tds.get(i).getCol()));
+        }
+        return order;
+    }
+
+    private String getRef(int rowIndex, int colIndex) {
+        return this.getColumnName(colIndex) + (rowIndex + 1);
+    }
+
+    private String getColumnName(int colIndex) {
+        for (int i = columnNames.size(); i <= colIndex; i++) {
+            columnNames.add(CellReference.convertNumToColString(i));
+        }
+        return columnNames.get(colIndex);
+    }
+
+    private void putEntry(String name) throws IOException {
+        writer.flush();
+        zipOut.putNextEntry(new ZipEntry(name));
+    }
+
+    private void closeEntry() throws IOException {
+        writer.flush();
+        zipOut.closeEntry();
+    }
+
+    /**
+     * xml转义，非法控制字符按Excel约定编码为_xHHHH_
+     */
+    static void appendEscaped(StringBuilder sb, String value) {
+        appendEscaped(sb, value, false);
+    }
+
+    /**
+     * 单元格文本转义，除xml转义外，形如_xHHHH_的原文前缀_x005F，避免被Excel解码
+     */
+    static void appendEscapedText(StringBuilder sb, String value) {
+        appendEscaped(sb, value, true);
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value, boolean text) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                case '\t':
+                case '\n':
+                case '\r':
+                    sb.append(c);
+                    break;
+                case '_':
+                    if (text && isUtfEscape(value, i)) {
+                        sb.append("_x005F");
+                    }
+                    sb.append(c);
+                    break;
+                default:
+                    if (c < ' ' || c == '\uFFFE' || c == '\uFFFF') {
+                        sb.append("_x").append(String.format("%04X", (int) c)).append('_');
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+
+    private static boolean isUtfEscape(String value, int start) {
+        if (start + 7 > value.length() || value.charAt(start + 1) != 'x' || value.charAt(start + 6) != '_') {
+            return false;
+        }
+        for (int i = start + 2; i < start + 6; i++) {
+            char c = value.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'A' && c <= 'F' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class RawCol {
+
+        private final int max;
+
+        private final String xml;
+
+        RawCol(int max, String xml) {
+            this.max = max;
+            this.xml = xml;
+        }
+    }
+}
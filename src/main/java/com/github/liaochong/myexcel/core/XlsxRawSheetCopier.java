@@ -0,0 +1,348 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core;
+
+import com.github.liaochong.myexcel.core.cache.StringsCache;
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * xlsx原始行复制器，将已有文件的行以xml形式直接拼接至直写器，不经由bean转换；
+ * 共享字符串转为内联字符串，样式按原有序号复制至新工作簿。
+ * 仅保留单元格、行属性、视图、列定义及合并单元格，图片、超链接、数据校验等不予保留
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+class XlsxRawSheetCopier implements Closeable {
+
+    private final OPCPackage opcPackage;
+
+    private final XSSFReader xssfReader;
+
+    private final StringsCache stringsCache = new StringsCache();
+
+    private final ReadOnlySharedStringsTable strings;
+
+    private int sheetCount;
+
+    private int lastSheetRowCount;
+
+    XlsxRawSheetCopier(Path excel) throws IOException {
+        try {
+            opcPackage = OPCPackage.open(excel.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Fail to open excel:" + excel, e);
+        }
+        try {
+            xssfReader = new XSSFReader(opcPackage);
+            strings = new ReadOnlySharedStringsTable(opcPackage, stringsCache);
+        } catch (OpenXML4JException | SAXException e) {
+            this.close();
+            throw new IOException("Fail to open excel:" + excel, e);
+        }
+    }
+
+    /**
+     * 按原有序号复制样式，须在目标工作簿创建其他样式前调用，以保证行中样式id仍然有效
+     *
+     * @param workbook 目标工作簿
+     * @throws IOException IOException
+     */
+    void copyStyles(Workbook workbook) throws IOException {
+        StylesTable stylesTable;
+        try {
+            stylesTable = xssfReader.getStylesTable();
+        } catch (OpenXML4JException e) {
+            throw new IOException("Fail to read styles", e);
+        }
+        if (stylesTable == null) {
+            return;
+        }
+        for (int i = 0, size = stylesTable.getNumCellStyles(); i < size; i++) {
+            XSSFCellStyle cellStyle = (XSSFCellStyle) (i == 0 ? workbook.getCellStyleAt(0) : workbook.createCellStyle());
+            cellStyle.cloneStyleFrom(stylesTable.getStyleAt(i));
+            // 单元格样式（cellStyleXfs）不予复制，统一指向默认
+            cellStyle.getCoreXf().setXfId(0);
+        }
+    }
+
+    /**
+     * 复制全部sheet，最后一个sheet保持开启，以便继续追加新行
+     *
+     * @param writer          直写器
+     * @param colSplit        冻结列
+     * @param rowSplit        冻结行
+     * @param lastColWidthMap 最后一个sheet的列宽，供新行写入，已有列定义原样保留且优先
+     * @throws IOException IOException
+     */
+    void copySheets(XlsxDirectWriter writer, int colSplit, int rowSplit, Map<Integer, Integer> lastColWidthMap) throws IOException {
+        try {
+            XSSFReader.SheetIterator iter = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (iter.hasNext()) {
+                try (InputStream stream = iter.next()) {
+                    if (sheetCount > 0) {
+                        writer.endSheet();
+                    }
+                    Map<Integer, Integer> colWidthMap = iter.hasNext() ? new HashMap<>() : lastColWidthMap;
+                    writer.startSheet(iter.getSheetName(), colSplit, rowSplit, colWidthMap);
+                    SheetHandler handler = new SheetHandler(writer);
+                    XMLReader sheetParser = SAXHelper.newXMLReader();
+                    sheetParser.setContentHandler(handler);
+                    sheetParser.parse(new InputSource(stream));
+                    lastSheetRowCount = handler.rowCount;
+                    sheetCount++;
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Fail to copy sheets", e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    int getSheetCount() {
+        return sheetCount;
+    }
+
+    /**
+     * 最后一个sheet的行数，即新行的起始行索引
+     *
+     * @return 行数
+     */
+    int getLastSheetRowCount() {
+        return lastSheetRowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stringsCache.clearAll();
+        opcPackage.revert();
+    }
+
+    /**
+     * 逐行回写sheet xml，非SpreadsheetML命名空间的元素及属性予以丢弃
+     */
+    private final class SheetHandler extends DefaultHandler {
+
+        private final XlsxDirectWriter writer;
+
+        private final StringBuilder row = new StringBuilder(1024);
+
+        private final StringBuilder sharedStringIndex = new StringBuilder();
+
+        private boolean inRow;
+
+        private int rowIndex;
+
+        private int rowCount;
+
+        private int skipDepth;
+
+        private boolean inSharedStringCell;
+
+        private boolean inSharedStringValue;
+        /**
+         * 原样复制的sheetViews、sheetFormatPr元素
+         */
+        private StringBuilder head;
+
+        private int headDepth;
+
+        SheetHandler(XlsxDirectWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (skipDepth > 0 || !XSSFRelation.NS_SPREADSHEETML.equals(uri)) {
+                skipDepth++;
+                return;
+            }
+            if (inRow) {
+                this.startRowElement(localName, attributes);
+                return;
+            }
+            if (head != null) {
+                headDepth++;
+                this.appendStart(head, localName, attributes, null);
+                return;
+            }
+            switch (localName) {
+                case "row":
+                    String r = attributes.getValue("r");
+                    rowIndex = r == null ? rowCount : Integer.parseInt(r) - 1;
+                    rowCount = rowIndex + 1;
+                    inRow = true;
+                    row.setLength(0);
+                    this.appendStart(row, "row", attributes, null);
+                    break;
+                case "sheetViews":
+                case "sheetFormatPr":
+                    head = new StringBuilder();
+                    headDepth = 1;
+                    this.appendStart(head, localName, attributes, null);
+                    break;
+                case "col":
+                    this.addRawCol(attributes);
+                    break;
+                case "mergeCell":
+                    writer.addMergedRegion(attributes.getValue("ref"));
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (skipDepth > 0) {
+                skipDepth--;
+                return;
+            }
+            if (head != null) {
+                head.append("</").append(localName).append('>');
+                if (--headDepth == 0) {
+                    if ("sheetViews".equals(localName)) {
+                        writer.setRawSheetViews(head.toString());
+                    } else {
+                        writer.setRawSheetFormatPr(head.toString());
+                    }
+                    head = null;
+                }
+                return;
+            }
+            if (!inRow) {
+                return;
+            }
+            if (inSharedStringCell) {
+                if ("v".equals(localName)) {
+                    inSharedStringValue = false;
+                } else if ("c".equals(localName)) {
+                    inSharedStringCell = false;
+                    this.appendSharedString();
+                }
+                return;
+            }
+            row.append("</").append(localName).append('>');
+            if ("row".equals(localName)) {
+                inRow = false;
+                try {
+                    writer.writeRawRow(rowIndex, row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (skipDepth > 0 || !inRow) {
+                return;
+            }
+            if (inSharedStringCell) {
+                if (inSharedStringValue) {
+                    sharedStringIndex.append(ch, start, length);
+                }
+                return;
+            }
+            XlsxDirectWriter.appendEscaped(row, new String(ch, start, length));
+        }
+
+        private void startRowElement(String localName, Attributes attributes) {
+            if (inSharedStringCell) {
+                if ("v".equals(localName)) {
+                    inSharedStringValue = true;
+                }
+                return;
+            }
+            if ("c".equals(localName) && "s".equals(attributes.getValue("t"))) {
+                inSharedStringCell = true;
+                sharedStringIndex.setLength(0);
+                this.appendStart(row, "c", attributes, "t");
+                return;
+            }
+            this.appendStart(row, localName, attributes, null);
+        }
+
+        private void appendSharedString() {
+            row.append(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+            if (sharedStringIndex.length() > 0) {
+                int idx = Integer.parseInt(sharedStringIndex.toString().trim());
+                XlsxDirectWriter.appendEscapedText(row, strings.getItemAt(idx).getString());
+            }
+            row.append("</t></is></c>");
+        }
+
+        /**
+         * 写出开始标签，excludedAttribute不为空时标签保持未闭合，由调用方补充
+         */
+        private void appendStart(StringBuilder target, String localName, Attributes attributes, String excludedAttribute) {
+            target.append('<').append(localName);
+            for (int i = 0, length = attributes.getLength(); i < length; i++) {
+                String attributeUri = attributes.getURI(i);
+                if (!attributeUri.isEmpty() && !XMLConstants.XML_NS_URI.equals(attributeUri)) {
+                    continue;
+                }
+                String name = attributes.getQName(i);
+                if (name.equals(excludedAttribute)) {
+                    continue;
+                }
+                target.append(' ').append(name).append("=\"");
+                XlsxDirectWriter.appendEscaped(target, attributes.getValue(i));
+                target.append('"');
+            }
+            if (excludedAttribute == null) {
+                target.append('>');
+            }
+        }
+
+        /**
+         * 原样保留列定义，宽度不经换算，隐藏、样式等属性一并保留
+         */
+        private void addRawCol(Attributes attributes) {
+            String min = attributes.getValue("min");
+            String max = attributes.getValue("max");
+            if (min == null || max == null) {
+                return;
+            }
+            StringBuilder col = new StringBuilder(64);
+            this.appendStart(col, "col", attributes, "");
+            writer.addRawCol(Integer.parseInt(min), Integer.parseInt(max), col.append("/>").toString());
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class Constants {
 
     public static final String CSV = ".csv";
 
+    public static final String GZ = ".gz";
+
     public static final String COLON = ":";
 
     public static final String ARROW = "->";
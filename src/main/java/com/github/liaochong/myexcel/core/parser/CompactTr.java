@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core.parser;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑行，仅承载字符串、数字、布尔、日期等普通内容，以数组按列存放内容、类型及样式，
+ * 不创建单元格对象；需要单元格对象时（如行合并占位）再按需展开
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class CompactTr extends Tr {
+    /**
+     * 列内容，日期类型为日期对象，其余为字符串，空白单元格为null
+     */
+    private final Object[] values;
+    /**
+     * 列内容类型
+     */
+    private final ContentTypeEnum[] contentTypes;
+    /**
+     * 列格式化，各行共用
+     */
+    private final String[] formats;
+    /**
+     * 列样式
+     */
+    private final Map<String, String>[] styles;
+    /**
+     * 是否已展开为单元格
+     */
+    private boolean expanded;
+
+    @SuppressWarnings("unchecked")
+    public CompactTr(int index, int height, Object[] values, ContentTypeEnum[] contentTypes, String[] formats) {
+        super(index, height);
+        this.values = values;
+        this.contentTypes = contentTypes;
+        this.formats = formats;
+        this.styles = new Map[values.length];
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public Object getValue(int col) {
+        return values[col];
+    }
+
+    public ContentTypeEnum getContentType(int col) {
+        return contentTypes[col];
+    }
+
+    public String getFormat(int col) {
+        return col < formats.length ? formats[col] : null;
+    }
+
+    public Map<String, String> getStyle(int col) {
+        Map<String, String> style = styles[col];
+        return style == null ? Collections.emptyMap() : style;
+    }
+
+    public void setStyle(int col, Map<String, String> style) {
+        styles[col] = style;
+    }
+
+    /**
+     * 是否仍为紧凑形式，展开后以单元格为准
+     *
+     * @return true/false
+     */
+    public boolean isCompact() {
+        return !expanded;
+    }
+
+    @Override
+    public List<Td> getTdList() {
+        if (!expanded) {
+            this.expand();
+        }
+        return super.getTdList();
+    }
+
+    @Override
+    public void setTdList(List<Td> tdList) {
+        expanded = true;
+        super.setTdList(tdList);
+    }
+
+    private void expand() {
+        List<Td> tdList = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            Td td = new Td(this.getIndex(), i);
+            Object value = values[i];
+            if (value instanceof Date) {
+                td.setDate((Date) value);
+            } else if (value instanceof LocalDateTime) {
+                td.setLocalDateTime((LocalDateTime) value);
+            } else if (value instanceof LocalDate) {
+                td.setLocalDate((LocalDate) value);
+            } else if (value != null) {
+                td.setContent((String) value);
+            }
+            td.setTdContentType(contentTypes[i]);
+            td.setFormat(this.getFormat(i));
+            td.setStyle(this.getStyle(i));
+            tdList.add(td);
+        }
+        this.setTdList(tdList);
+    }
+}
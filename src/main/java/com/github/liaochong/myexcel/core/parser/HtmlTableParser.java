@@ -31,7 +31,12 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -39,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -62,13 +68,17 @@ public class HtmlTableParser {
 
     private String html;
 
-    private Map<String, String> defaultLinkStyle = new HashMap<>();
+    private Reader htmlReader;
+
+    private Map<String, String> defaultLinkStyle;
 
     private XSSFRichTextString spanText;
 
     private HtmlTableParser() {
-        defaultLinkStyle.put(FontStyle.FONT_COLOR, "blue");
-        defaultLinkStyle.put(FontStyle.TEXT_DECORATION, FontStyle.UNDERLINE);
+        Map<String, String> linkStyle = new HashMap<>();
+        linkStyle.put(FontStyle.FONT_COLOR, "blue");
+        linkStyle.put(FontStyle.TEXT_DECORATION, FontStyle.UNDERLINE);
+        defaultLinkStyle = StyleUtil.intern(linkStyle);
     }
 
     public static HtmlTableParser of(File htmlFile) {
@@ -85,6 +95,19 @@ public class HtmlTableParser {
         return htmlTableParser;
     }
 
+    /**
+     * 字符流，仅在解析时读取，由创建方关闭
+     *
+     * @param htmlReader html字符流
+     * @return HtmlTableParser
+     */
+    public static HtmlTableParser of(Reader htmlReader) {
+        Objects.requireNonNull(htmlReader);
+        HtmlTableParser htmlTableParser = new HtmlTableParser();
+        htmlTableParser.htmlReader = htmlReader;
+        return htmlTableParser;
+    }
+
     /**
      * 获取所有表格
      *
@@ -98,6 +121,8 @@ public class HtmlTableParser {
         Document document;
         if (htmlFile != null) {
             document = Jsoup.parse(htmlFile, CharEncoding.UTF_8);
+        } else if (htmlReader != null) {
+            document = Jsoup.parse(readFully(htmlReader));
         } else {
             document = Jsoup.parse(html, CharEncoding.UTF_8);
         }
@@ -114,13 +139,42 @@ public class HtmlTableParser {
             if (!captionElements.isEmpty()) {
                 table.setCaption(captionElements.first().text());
             }
-            this.parseTrOfTable(table, tableElement, StyleUtil.parseStyle(tableElement));
+            this.parseTrOfTable(table, tableElement, StyleUtil.parseInternedStyle(tableElement));
             return table;
         }).collect(Collectors.toList());
         log.info("Complete html file parsing,takes {} ms", System.currentTimeMillis() - startTime);
         return result;
     }
 
+    /**
+     * 逐行解析所有表格，不构建完整DOM，每解析出一批行即交由trsConsumer，行索引于各表格内独立计数；
+     * 不解析caption
+     *
+     * @param parseConfig  解析配置
+     * @param trsConsumer  行消费者
+     * @throws IOException IOException
+     */
+    public void parseTrs(ParseConfig parseConfig, Consumer<List<Tr>> trsConsumer) throws IOException {
+        this.parseConfig = parseConfig;
+        if (htmlReader != null) {
+            new HtmlTableTokenizer(htmlReader).tokenize(new TrBatchHandler(trsConsumer));
+            return;
+        }
+        try (Reader reader = htmlFile != null ? Files.newBufferedReader(htmlFile.toPath(), StandardCharsets.UTF_8) : new StringReader(html)) {
+            new HtmlTableTokenizer(reader).tokenize(new TrBatchHandler(trsConsumer));
+        }
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[8192];
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            result.append(buffer, 0, length);
+        }
+        return result.toString();
+    }
+
     /**
      * 解析table中的tr
      *
@@ -130,7 +184,7 @@ public class HtmlTableParser {
         Map<Element, Map<String, String>> parentStyleMap = new ConcurrentHashMap<>();
 
         Elements trElements = tableElement.getElementsByTag(HtmlTag.tr.name());
-        final Map<Integer, List<Integer>> seizeMap = new HashMap<>();
+        final SpanOccupancy spanOccupancy = new SpanOccupancy();
         List<Tr> trList = IntStream.range(0, trElements.size()).mapToObj(index -> {
             Element trElement = trElements.get(index);
             Element parent = trElement.parent();
@@ -141,31 +195,36 @@ public class HtmlTableParser {
                 if (parentStyleMap.containsKey(parent)) {
                     upperStyle = parentStyleMap.get(parent);
                 } else {
-                    upperStyle = StyleUtil.mixStyle(tableStyle, StyleUtil.parseStyle(parent));
+                    upperStyle = StyleUtil.mixInternedStyle(tableStyle, StyleUtil.parseInternedStyle(parent));
                     parentStyleMap.putIfAbsent(parent, upperStyle);
                 }
             }
-            Map<String, String> trStyleMap = StyleUtil.mixStyle(upperStyle, StyleUtil.parseStyle(trElement));
-            String height = trStyleMap.get("height");
-            Tr tr = new Tr(index, TdUtil.getValue(height), true);
-            // 行可见性
-            tr.setVisibility(!Objects.equals(trStyleMap.get("visibility"), "hidden"));
-            this.parseTdOfTr(tr, trElement, trStyleMap, seizeMap);
-            return tr;
+            return this.parseTr(index, trElement, upperStyle, spanOccupancy);
         }).collect(Collectors.toCollection(LinkedList::new));
         table.setTrList(trList);
     }
 
+    private Tr parseTr(int index, Element trElement, Map<String, String> upperStyle, SpanOccupancy spanOccupancy) {
+        Map<String, String> trStyleMap = StyleUtil.mixInternedStyle(upperStyle, StyleUtil.parseInternedStyle(trElement));
+        String height = trStyleMap.get("height");
+        Tr tr = new Tr(index, TdUtil.getValue(height), true);
+        // 行可见性
+        tr.setVisibility(!Objects.equals(trStyleMap.get("visibility"), "hidden"));
+        this.parseTdOfTr(tr, trElement, trStyleMap, spanOccupancy);
+        return tr;
+    }
+
     /**
      * 获取tr中的td
      *
      * @param tr        tr
      * @param trElement trElement
      * @param trStyle   trStyle
-     * @param seizeMap  seizeMap 占位map
+     * @param spanOccupancy 跨行占位索引
      */
-    private void parseTdOfTr(Tr tr, Element trElement, Map<String, String> trStyle, Map<Integer, List<Integer>> seizeMap) {
+    private void parseTdOfTr(Tr tr, Element trElement, Map<String, String> trStyle, SpanOccupancy spanOccupancy) {
         Elements tdElements = trElement.children();
+        SpanOccupancy.Occupied occupied = spanOccupancy.release(tr.getIndex());
         if (tdElements.isEmpty()) {
             tr.setTdList(Collections.emptyList());
             tr.setColWidthMap(Collections.emptyMap());
@@ -174,20 +233,23 @@ public class HtmlTableParser {
 
         final List<Td> tdList = new LinkedList<>();
         final Map<Integer, Integer> colWidthMap = new HashMap<>(tdElements.size());
-        List<Integer> seizeOfTr = seizeMap.getOrDefault(tr.getIndex(), Collections.emptyList());
+        BitSet seizedColumns = occupied == null ? null : occupied.getColumns();
         // 单元格偏移量
         int shift = 0;
+        // 已扫描至的列及其之前的空闲列数，单元格列序递增，扫描无需回退
+        int cursor = 0;
+        int freeCount = 0;
         for (int i = 0, size = tdElements.size(); i < size; i++) {
             Element tdElement = tdElements.get(i);
             Td td = new Td(tr.getIndex(), i + shift);
             this.setTdContent(tdElement, td);
 
             td.setTh(Objects.equals(HtmlTag.th.name(), tdElement.tagName()));
-            Map<String, String> tdStyle = StyleUtil.parseStyle(tdElement);
+            Map<String, String> tdStyle = StyleUtil.parseInternedStyle(tdElement);
             if (tdStyle.isEmpty() && ContentTypeEnum.isLink(td.getTdContentType())) {
                 tdStyle = defaultLinkStyle;
             }
-            td.setStyle(StyleUtil.mixStyle(trStyle, tdStyle));
+            td.setStyle(StyleUtil.mixInternedStyle(trStyle, tdStyle));
 
             String colSpan = tdElement.attr(HtmlTag.colspan.name());
             td.setColSpan(TdUtil.getSpan(colSpan));
@@ -195,32 +257,18 @@ public class HtmlTableParser {
             String rowSpan = tdElement.attr(HtmlTag.rowspan.name());
             td.setRowSpan(TdUtil.getSpan(rowSpan));
 
-            if (!seizeOfTr.isEmpty()) {
-                List<Integer> checkedPositions = new ArrayList<>();
-                while (true) {
-                    List<Integer> seizePositions = seizeOfTr.stream().filter(s -> td.getCol() >= s).collect(Collectors.toList());
-                    if (!checkedPositions.isEmpty()) {
-                        seizePositions.removeAll(checkedPositions);
+            if (seizedColumns != null) {
+                // 跳过被占据的列，定位至第（i + shift）个空闲列
+                int target = i + shift;
+                while (seizedColumns.get(cursor) || freeCount < target) {
+                    if (!seizedColumns.get(cursor)) {
+                        freeCount++;
                     }
-                    if (seizePositions.isEmpty()) {
-                        break;
-                    }
-                    td.setCol(td.getCol() + seizePositions.size());
-                    checkedPositions.addAll(seizePositions);
-                }
-            }
-
-            if (td.getRowSpan() > 1) {
-                for (int j = 1, length = td.getRowSpan(); j < length; j++) {
-                    int rowNum = tr.getIndex() + j;
-                    List<Integer> seizePosOfTr = seizeMap.get(rowNum);
-                    if (Objects.isNull(seizePosOfTr)) {
-                        seizePosOfTr = new ArrayList<>();
-                        seizeMap.put(rowNum, seizePosOfTr);
-                    }
-                    IntStream.rangeClosed(td.getCol(), td.getColBound()).forEach(seizePosOfTr::add);
+                    cursor++;
                 }
+                td.setCol(cursor);
             }
+            spanOccupancy.occupy(td);
 
             if (td.getColSpan() > 0) {
                 shift += td.getColSpan() - 1;
@@ -340,7 +388,7 @@ public class HtmlTableParser {
                 font.setStartIndex(startIndex);
                 font.setEndIndex(startIndex + spanText.length());
 
-                Map<String, String> fontStyle = StyleUtil.parseStyle(spanElement);
+                Map<String, String> fontStyle = StyleUtil.parseInternedStyle(spanElement);
                 if (!fontStyle.isEmpty()) {
                     font.setStyle(fontStyle);
                     td.getFonts().add(font);
@@ -351,6 +399,131 @@ public class HtmlTableParser {
         return LINE_FEED_PATTERN.matcher(tdElement.text()).replaceAll("\n");
     }
 
+    /**
+     * 行片段分批解析，每批行片段包裹于table中交由Jsoup解析，跨行占位于表格内跨批保留；
+     * thead中的行逐行解析并缓存，再次出现时直接复制；其余行均分批解析，不予缓存
+     */
+    private final class TrBatchHandler implements HtmlTableTokenizer.Handler {
+
+        private static final int BATCH_SIZE = 128;
+
+        private final Consumer<List<Tr>> trsConsumer;
+
+        private final StringBuilder batch = new StringBuilder(BATCH_SIZE * 256);
+
+        private int batchCount;
+
+        private Map<String, String> tableStyle = Collections.emptyMap();
+
+        private Map<String, String> upperStyle = Collections.emptyMap();
+
+        private SpanOccupancy spanOccupancy;
+
+        private int index;
+
+        private boolean inThead;
+
+        TrBatchHandler(Consumer<List<Tr>> trsConsumer) {
+            this.trsConsumer = trsConsumer;
+        }
+
+        @Override
+        public void startTable(String startTag) {
+            Element tableElement = Jsoup.parseBodyFragment(startTag + "</table>").getElementsByTag(HtmlTag.table.name()).first();
+            tableStyle = tableElement == null ? Collections.emptyMap() : StyleUtil.parseInternedStyle(tableElement);
+            upperStyle = tableStyle;
+            spanOccupancy = new SpanOccupancy();
+            index = 0;
+            inThead = false;
+        }
+
+        @Override
+        public void startSection(String sectionName, String startTag) {
+            this.flush();
+            Element sectionElement = Jsoup.parseBodyFragment("<table>" + startTag + "</" + sectionName + "></table>")
+                    .getElementsByTag(sectionName).first();
+            upperStyle = sectionElement == null ? tableStyle : StyleUtil.mixInternedStyle(tableStyle, StyleUtil.parseInternedStyle(sectionElement));
+            inThead = HtmlTag.thead.name().equals(sectionName);
+        }
+
+        @Override
+        public void endSection() {
+            this.flush();
+            upperStyle = tableStyle;
+            inThead = false;
+        }
+
+        @Override
+        public void tr(CharSequence trHtml) {
+            if (inThead) {
+                this.flush();
+                this.theadTr(trHtml.toString());
+                return;
+            }
+            batch.append(trHtml);
+            if (++batchCount >= BATCH_SIZE) {
+                this.flush();
+            }
+        }
+
+        @Override
+        public void endTable() {
+            this.flush();
+        }
+
+        private void flush() {
+            if (batchCount == 0) {
+                return;
+            }
+            List<Element> trElements = this.parseTrElements(batch);
+            batch.setLength(0);
+            batchCount = 0;
+            List<Tr> trList = new ArrayList<>(trElements.size());
+            for (Element trElement : trElements) {
+                trList.add(parseTr(index++, trElement, upperStyle, spanOccupancy));
+            }
+            trsConsumer.accept(trList);
+        }
+
+        private void theadTr(String trHtml) {
+            boolean occupied = spanOccupancy.isOccupied(index);
+            TrSkeletonCache.Key key = new TrSkeletonCache.Key(trHtml, upperStyle, parseConfig.isComputeAutoWidth());
+            Tr tr = occupied ? null : TrSkeletonCache.get(key, index);
+            if (tr != null) {
+                tr.getTdList().forEach(spanOccupancy::occupy);
+                index++;
+                trsConsumer.accept(Collections.singletonList(tr));
+                return;
+            }
+            List<Element> trElements = this.parseTrElements(new StringBuilder(trHtml));
+            List<Tr> trList = new ArrayList<>(trElements.size());
+            for (Element trElement : trElements) {
+                trList.add(parseTr(index++, trElement, upperStyle, spanOccupancy));
+            }
+            if (!occupied && trList.size() == 1) {
+                TrSkeletonCache.put(key, trList.get(0));
+            }
+            trsConsumer.accept(trList);
+        }
+
+        private List<Element> parseTrElements(StringBuilder trHtml) {
+            Document document = Jsoup.parseBodyFragment(trHtml.insert(0, "<table>").append("</table>").toString());
+            document.outputSettings(new Document.OutputSettings().prettyPrint(false));
+            document.select("br").after("\\n");
+            document.select("p").before("\\n");
+            Element tableElement = document.body().child(0);
+            List<Element> trElements = new ArrayList<>();
+            for (Element section : tableElement.children()) {
+                for (Element trElement : section.children()) {
+                    if (HtmlTag.tr.name().equals(trElement.tagName())) {
+                        trElements.add(trElement);
+                    }
+                }
+            }
+            return trElements;
+        }
+    }
+
     public enum HtmlTag {
         /**
          * table
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * html表格切分器，顺序读取字符流，仅识别表格结构标签，按tr切分出行片段，不构建DOM；
+ * 单元格内的嵌套表格整体保留于所在行片段中，注释、script、style及caption内容予以跳过
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+class HtmlTableTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int pos;
+
+    private int limit;
+
+    /**
+     * 切分事件处理
+     */
+    interface Handler {
+
+        void startTable(String startTag) throws IOException;
+
+        void startSection(String sectionName, String startTag) throws IOException;
+
+        void endSection() throws IOException;
+
+        void tr(CharSequence trHtml) throws IOException;
+
+        void endTable() throws IOException;
+    }
+
+    HtmlTableTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    void tokenize(Handler handler) throws IOException {
+        StringBuilder tag = new StringBuilder();
+        StringBuilder tr = null;
+        int tableDepth = 0;
+        // 行内嵌套表格层数
+        int nestedTables = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c != '<') {
+                if (tr != null) {
+                    tr.append((char) c);
+                }
+                continue;
+            }
+            tag.setLength(0);
+            tag.append('<');
+            boolean comment = this.readTag(tag);
+            String name = comment ? null : getTagName(tag);
+            if (name == null) {
+                if (tr != null && !comment) {
+                    tr.append(tag);
+                }
+                continue;
+            }
+            boolean closing = tag.charAt(1) == '/';
+            if (tr != null) {
+                if ("table".equals(name)) {
+                    if (!closing) {
+                        nestedTables++;
+                    } else if (nestedTables > 0) {
+                        nestedTables--;
+                    } else {
+                        // 行未闭合即结束表格
+                        handler.tr(tr);
+                        tr = null;
+                        if (tableDepth-- == 1) {
+                            handler.endTable();
+                        }
+                        continue;
+                    }
+                    tr.append(tag);
+                    continue;
+                }
+                if (nestedTables > 0 || (!"tr".equals(name) && !isSection(name))) {
+                    tr.append(tag);
+                    continue;
+                }
+                if (closing && "tr".equals(name)) {
+                    tr.append(tag);
+                    handler.tr(tr);
+                    tr = null;
+                    continue;
+                }
+                // 行未闭合即开始新行或新区域
+                handler.tr(tr);
+                tr = null;
+            }
+            switch (name) {
+                case "table":
+                    if (!closing) {
+                        if (tableDepth++ == 0) {
+                            handler.startTable(tag.toString());
+                        }
+                    } else if (tableDepth > 0 && tableDepth-- == 1) {
+                        handler.endTable();
+                    }
+                    break;
+                case "thead":
+                case "tbody":
+                case "tfoot":
+                    if (tableDepth == 1) {
+                        if (closing) {
+                            handler.endSection();
+                        } else {
+                            handler.startSection(name, tag.toString());
+                        }
+                    }
+                    break;
+                case "tr":
+                    if (tableDepth == 1 && !closing) {
+                        tr = new StringBuilder(256).append(tag);
+                    }
+                    break;
+                case "caption":
+                case "script":
+                case "style":
+                    if (!closing) {
+                        this.skipUntilEndTag(name);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (tr != null) {
+            handler.tr(tr);
+        }
+        if (tableDepth > 0) {
+            handler.endTable();
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = reader.read(buffer, 0, BUFFER_SIZE);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * 读取标签至'>'，引号内的'>'不视为结束；注释读取至"-->"
+     *
+     * @param tag 已包含'<'的标签
+     * @return 是否为注释
+     * @throws IOException IOException
+     */
+    private boolean readTag(StringBuilder tag) throws IOException {
+        char quote = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            tag.append((char) c);
+            if (tag.length() == 4 && tag.charAt(1) == '!' && tag.charAt(2) == '-' && tag.charAt(3) == '-') {
+                this.skipComment();
+                return true;
+            }
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    private void skipUntilEndTag(String name) throws IOException {
+        String endTag = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = this.read()) != -1) {
+            if (matched == endTag.length()) {
+                if (c == '>') {
+                    return;
+                }
+                continue;
+            }
+            if (Character.toLowerCase((char) c) == endTag.charAt(matched)) {
+                matched++;
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private static String getTagName(StringBuilder tag) {
+        int start = tag.length() > 1 && tag.charAt(1) == '/' ? 2 : 1;
+        int end = start;
+        while (end < tag.length() && Character.isLetterOrDigit(tag.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        return tag.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isSection(String name) {
+        return "thead".equals(name) || "tbody".equals(name) || "tfoot".equals(name);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core.parser;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 跨行占位索引，按行记录被上方跨行单元格占据的列及对应的跨行单元格，
+ * 各行处理时一次性取出并移除
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class SpanOccupancy {
+
+    private final Map<Integer, Occupied> occupiedRows = new HashMap<>();
+
+    /**
+     * 记录跨行单元格在后续行占据的位置
+     *
+     * @param td 单元格
+     */
+    public void occupy(Td td) {
+        if (td.getRowSpan() == 0) {
+            return;
+        }
+        for (int i = td.getRow() + 1, rowBound = td.getRowBound(); i <= rowBound; i++) {
+            Occupied occupied = occupiedRows.get(i);
+            if (occupied == null) {
+                occupied = new Occupied();
+                occupiedRows.put(i, occupied);
+            }
+            occupied.columns.set(td.getCol(), td.getColBound() + 1);
+            occupied.tds.add(td);
+        }
+    }
+
+    /**
+     * 指定行是否存在占位
+     *
+     * @param row 行索引
+     * @return true/false
+     */
+    public boolean isOccupied(int row) {
+        return !occupiedRows.isEmpty() && occupiedRows.containsKey(row);
+    }
+
+    /**
+     * 取出并移除指定行的占位
+     *
+     * @param row 行索引
+     * @return 占位，不存在时为null
+     */
+    public Occupied release(int row) {
+        return occupiedRows.isEmpty() ? null : occupiedRows.remove(row);
+    }
+
+    public static final class Occupied {
+        /**
+         * 被占据的列
+         */
+        private final BitSet columns = new BitSet();
+        /**
+         * 占据该行的跨行单元格
+         */
+        private final List<Td> tds = new ArrayList<>(2);
+
+        public BitSet getColumns() {
+            return columns;
+        }
+
+        public List<Td> getTds() {
+            return tds;
+        }
+    }
+}
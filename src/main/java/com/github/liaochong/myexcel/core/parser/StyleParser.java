@@ -101,7 +101,7 @@ public final class StyleParser {
             }
             boolean appoint = splits[0].contains("&");
             if (appoint) {
-                eachColumnStyle.put(splits[0], StyleUtil.parseStyle(splits[1]));
+                eachColumnStyle.put(splits[0], StyleUtil.parseInternedStyle(splits[1]));
             } else {
                 styleMap.putIfAbsent(splits[0], style);
             }
@@ -113,17 +113,18 @@ public final class StyleParser {
 
         String linkStyle = styleMap.get("link");
         if (linkStyle != null) {
-            globalLinkStyle = StyleUtil.parseStyle(linkStyle.split(Constants.ARROW)[1]);
+            globalLinkStyle = StyleUtil.parseInternedStyle(linkStyle.split(Constants.ARROW)[1]);
         } else {
-            globalLinkStyle = new HashMap<>();
-            globalLinkStyle.put(FontStyle.FONT_COLOR, "blue");
-            globalLinkStyle.put(FontStyle.TEXT_DECORATION, FontStyle.UNDERLINE);
+            Map<String, String> linkStyleMap = new HashMap<>();
+            linkStyleMap.put(FontStyle.FONT_COLOR, "blue");
+            linkStyleMap.put(FontStyle.TEXT_DECORATION, FontStyle.UNDERLINE);
+            globalLinkStyle = StyleUtil.intern(linkStyleMap);
         }
     }
 
     private Map<String, String> parseStyle(Map<String, String> styleMap, String prefix) {
         String style = styleMap.get(prefix);
-        return style == null ? Collections.emptyMap() : StyleUtil.parseStyle(style.split(Constants.ARROW)[1]);
+        return style == null ? Collections.emptyMap() : StyleUtil.parseInternedStyle(style.split(Constants.ARROW)[1]);
     }
 
     public void setColumnStyle(Field field, int fieldIndex, String... columnStyles) {
@@ -144,9 +145,9 @@ public final class StyleParser {
             String[] splits = columnStyle.split(Constants.ARROW);
             if (splits.length == 1) {
                 // 发现未设置样式归属，则设置为全局样式，清除其他样式
-                setEachColumnStyle("cell", fieldIndex, StyleUtil.parseStyle(splits[0]));
+                setEachColumnStyle("cell", fieldIndex, StyleUtil.parseInternedStyle(splits[0]));
             } else {
-                setEachColumnStyle(splits[0], fieldIndex, StyleUtil.parseStyle(splits[1]));
+                setEachColumnStyle(splits[0], fieldIndex, StyleUtil.parseInternedStyle(splits[1]));
             }
         }
     }
@@ -158,11 +159,11 @@ public final class StyleParser {
         String stylePrefix = prefix + "&" + fieldIndex;
         Map<String, String> parentStyleMap = eachColumnStyle.get(stylePrefix);
         if (parentStyleMap == null || parentStyleMap.isEmpty()) {
-            parentStyleMap = new HashMap<>(styleMap);
-            eachColumnStyle.put(stylePrefix, parentStyleMap);
+            parentStyleMap = StyleUtil.intern(styleMap);
         } else {
-            parentStyleMap.putAll(styleMap);
+            parentStyleMap = StyleUtil.mixInternedStyle(parentStyleMap, styleMap);
         }
+        eachColumnStyle.put(stylePrefix, parentStyleMap);
         setWidth(fieldIndex, parentStyleMap);
     }
 
@@ -186,8 +187,7 @@ public final class StyleParser {
                 if (style == null || style.isEmpty()) {
                     style = cellStyleMap;
                 } else {
-                    style = new HashMap<>(style);
-                    style.putAll(cellStyleMap);
+                    style = StyleUtil.mixInternedStyle(style, cellStyleMap);
                 }
             }
             if (style == null && !globalCellStyle.isEmpty()) {
@@ -197,22 +197,20 @@ public final class StyleParser {
                 style = isOddRow ? globalCommonStyle : globalEvenStyle;
             }
             if (ContentTypeEnum.isLink(contentType)) {
-                style = new HashMap<>(style);
-                style.putAll(globalLinkStyle);
+                style = StyleUtil.mixInternedStyle(style, globalLinkStyle);
             }
         }
         if (format != null) {
-            style = this.getFormatStyle(format, fieldIndex, style);
+            style = StyleUtil.mixInternedStyle(style, this.getFormatStyle(format));
         }
         return style;
     }
 
-    private Map<String, String> getFormatStyle(String format, int fieldIndex, Map<String, String> style) {
-        Map<String, String> formatStyle = formatsStyleMap.get(format + "_" + fieldIndex + "_" + (isOddRow ? "odd&" : "even&"));
+    private Map<String, String> getFormatStyle(String format) {
+        Map<String, String> formatStyle = formatsStyleMap.get(format);
         if (formatStyle == null) {
-            formatStyle = new HashMap<>(style);
-            formatStyle.put("format", format);
-            formatsStyleMap.put(format + "_" + fieldIndex, formatStyle);
+            formatStyle = StyleUtil.intern(Collections.singletonMap("format", format));
+            formatsStyleMap.put(format, formatStyle);
         }
         return formatStyle;
     }
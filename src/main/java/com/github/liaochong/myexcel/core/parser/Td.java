@@ -20,6 +20,7 @@ import com.github.liaochong.myexcel.utils.TdUtil;
 import java.io.File;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -95,6 +96,39 @@ public class Td {
         this.col = col;
     }
 
+    /**
+     * 复制单元格，样式等不可变内容共用，字体逐一复制
+     *
+     * @param td 源单元格
+     */
+    public Td(Td td) {
+        this.row = td.row;
+        this.col = td.col;
+        this.rowSpan = td.rowSpan;
+        this.colSpan = td.colSpan;
+        this.content = td.content;
+        this.tdContentType = td.tdContentType;
+        this.th = td.th;
+        this.style = td.style;
+        this.formula = td.formula;
+        this.link = td.link;
+        this.file = td.file;
+        this.format = td.format;
+        this.date = td.date;
+        this.localDate = td.localDate;
+        this.localDateTime = td.localDateTime;
+        if (td.fonts != null) {
+            this.fonts = new ArrayList<>(td.fonts.size());
+            for (Font font : td.fonts) {
+                Font copy = new Font();
+                copy.setStartIndex(font.getStartIndex());
+                copy.setEndIndex(font.getEndIndex());
+                copy.setStyle(font.getStyle());
+                this.fonts.add(copy);
+            }
+        }
+    }
+
     public void setRowSpan(int rowSpan) {
         if (rowSpan < 2) {
             return;
@@ -15,7 +15,9 @@
  */
 package com.github.liaochong.myexcel.core.parser;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -61,6 +63,25 @@ public class Tr {
         this.fromTemplate = fromTemplate;
     }
 
+    /**
+     * 深复制行，单元格逐一复制
+     *
+     * @param tr 源行
+     */
+    public Tr(Tr tr) {
+        this.index = tr.index;
+        this.height = tr.height;
+        this.visibility = tr.visibility;
+        this.fromTemplate = tr.fromTemplate;
+        this.colWidthMap = tr.colWidthMap == null ? null : new HashMap<>(tr.colWidthMap);
+        if (tr.tdList != Collections.EMPTY_LIST) {
+            this.tdList = new ArrayList<>(tr.tdList.size());
+            for (Td td : tr.tdList) {
+                this.tdList.add(new Td(td));
+            }
+        }
+    }
+
     public int getIndex() {
         return this.index;
     }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core.parser;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 表头行解析结果缓存，thead中的行视为模板固定部分，按行片段及上级样式缓存解析结果，
+ * 同一模板再次渲染时直接复制，不再经由Jsoup解析及样式解析；
+ * tbody等区域的行即便仅含th也可能包含每次渲染的数据，不予缓存；受上方跨行单元格占据的行布局依赖上文，亦不予缓存
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+final class TrSkeletonCache {
+
+    private static final int MAX_SIZE = 1024;
+
+    private static final Map<Key, Tr> SKELETONS = new ConcurrentHashMap<>();
+
+    private TrSkeletonCache() {
+    }
+
+    /**
+     * 获取缓存行的副本
+     *
+     * @param key   缓存键
+     * @param index 行索引
+     * @return 行，不存在时为null
+     */
+    static Tr get(Key key, int index) {
+        Tr skeleton = SKELETONS.get(key);
+        if (skeleton == null) {
+            return null;
+        }
+        Tr tr = new Tr(skeleton);
+        tr.setIndex(index);
+        tr.getTdList().forEach(td -> td.setRow(index));
+        return tr;
+    }
+
+    static void put(Key key, Tr tr) {
+        if (SKELETONS.size() >= MAX_SIZE) {
+            SKELETONS.clear();
+        }
+        SKELETONS.put(key, new Tr(tr));
+    }
+
+    static final class Key {
+
+        private final String trHtml;
+
+        private final Map<String, String> upperStyle;
+
+        private final boolean computeAutoWidth;
+
+        private final int hash;
+
+        Key(String trHtml, Map<String, String> upperStyle, boolean computeAutoWidth) {
+            this.trHtml = trHtml;
+            this.upperStyle = upperStyle;
+            this.computeAutoWidth = computeAutoWidth;
+            this.hash = Objects.hash(trHtml, upperStyle, computeAutoWidth);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return computeAutoWidth == key.computeAutoWidth && trHtml.equals(key.trHtml) && upperStyle.equals(key.upperStyle);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -17,12 +17,31 @@ package com.github.liaochong.myexcel.core.templatehandler;
 import com.github.liaochong.myexcel.core.parser.HtmlTableParser;
 import com.github.liaochong.myexcel.core.parser.ParseConfig;
 import com.github.liaochong.myexcel.core.parser.Table;
+import com.github.liaochong.myexcel.core.parser.Tr;
 import com.github.liaochong.myexcel.exception.ExcelBuildException;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -33,6 +52,27 @@ public abstract class AbstractTemplateHandler<T, E> implements TemplateHandler {
 
     protected static final String CLASSPATH = "classpath";
 
+    /**
+     * 渲染管道中未读取的块数上限，每块至多为写入缓冲大小，即渲染可领先于解析约64K字符
+     */
+    private static final int PIPE_CHUNKS = 8;
+
+    /**
+     * 渲染线程上限，线程空闲后复用，全部繁忙时不再排队
+     */
+    private static final int MAX_RENDER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final ExecutorService RENDER_EXECUTOR;
+
+    static {
+        AtomicInteger threadCount = new AtomicInteger();
+        RENDER_EXECUTOR = new ThreadPoolExecutor(0, MAX_RENDER_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "myexcel-render-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
     protected E templateEngine;
 
     @Override
@@ -88,4 +128,162 @@ public abstract class AbstractTemplateHandler<T, E> implements TemplateHandler {
         String template = render(renderData);
         return HtmlTableParser.of(template).getAllTable(parseConfig);
     }
+
+    /**
+     * 渲染与解析并行，渲染在共用的myexcel-render-*线程中进行，经由有界管道按块输出，当前线程边读取边解析，不持有完整渲染结果；
+     * 渲染线程均繁忙时退化为当前线程先渲染再解析。
+     * 调用方线程的ThreadLocal（如MDC、安全上下文、Locale）对模板引擎不可见，需经由renderData传入。
+     * 渲染失败时解析随之失败，不会将已输出的部分视为完整内容；解析中止时关闭管道，渲染随之结束
+     *
+     * @param renderData  渲染数据
+     * @param parseConfig 解析配置
+     * @param trsConsumer 行消费者
+     * @param <F>         被渲染数据类型
+     * @throws Exception Exception
+     */
+    @Override
+    public <F> void render(Map<String, F> renderData, ParseConfig parseConfig, Consumer<List<Tr>> trsConsumer) throws Exception {
+        RenderPipe pipe = new RenderPipe();
+        Future<?> renderFuture;
+        try {
+            renderFuture = RENDER_EXECUTOR.submit(() -> {
+                Writer out = new BufferedWriter(pipe.writer);
+                try {
+                    render(renderData, out);
+                } catch (Throwable e) {
+                    // 先记录异常再关闭管道，保证读取方读到结尾时可感知失败
+                    pipe.renderFailure.set(e);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        pipe.renderFailure.compareAndSet(null, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            HtmlTableParser.of(new StringReader(render(renderData))).parseTrs(parseConfig, trsConsumer);
+            return;
+        }
+        try (Reader in = pipe.reader) {
+            HtmlTableParser.of(in).parseTrs(parseConfig, trsConsumer);
+        } catch (RenderException e) {
+            throw ExcelBuildException.of("Failed to render template", e.getCause());
+        } finally {
+            try {
+                renderFuture.get();
+            } catch (ExecutionException e) {
+                // 渲染异常已记录于管道
+            }
+        }
+    }
+
+    /**
+     * 渲染管道，写入方按块传递字符，未读取的块数有上限，写满后阻塞；
+     * 读取方关闭后写入失败，读到结尾时若渲染失败则抛出异常，使解析方不会将部分输出视为完整内容
+     */
+    private static final class RenderPipe {
+
+        private static final char[] EOF = new char[0];
+
+        private final BlockingQueue<char[]> chunks = new ArrayBlockingQueue<>(PIPE_CHUNKS);
+
+        private final AtomicReference<Throwable> renderFailure = new AtomicReference<>();
+
+        private volatile boolean readerClosed;
+
+        private final Writer writer = new Writer() {
+
+            private boolean closed;
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                if (closed) {
+                    throw new IOException("Pipe closed");
+                }
+                if (len > 0) {
+                    RenderPipe.this.put(Arrays.copyOfRange(cbuf, off, off + len));
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    RenderPipe.this.put(EOF);
+                }
+            }
+        };
+
+        private final Reader reader = new Reader() {
+
+            private char[] current;
+
+            private int pos;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (current != EOF && (current == null || pos == current.length)) {
+                    current = RenderPipe.this.take();
+                    pos = 0;
+                }
+                if (current == EOF) {
+                    Throwable failure = renderFailure.get();
+                    if (failure != null) {
+                        throw new RenderException(failure);
+                    }
+                    return -1;
+                }
+                int n = Math.min(len, current.length - pos);
+                System.arraycopy(current, pos, cbuf, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+                readerClosed = true;
+                chunks.clear();
+            }
+        };
+
+        private void put(char[] chunk) throws IOException {
+            try {
+                while (!readerClosed) {
+                    if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (chunk != EOF) {
+                throw new IOException("Pipe closed");
+            }
+        }
+
+        private char[] take() throws IOException {
+            try {
+                return chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    private static final class RenderException extends IOException {
+
+        RenderException(Throwable cause) {
+            super(cause);
+        }
+    }
 }
@@ -26,7 +26,6 @@ import org.beetl.core.resource.FileResourceLoader;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -37,38 +36,31 @@ import java.util.function.Supplier;
  */
 public class BeetlTemplateHandler extends AbstractTemplateHandler<GroupTemplate, Template> {
 
-    private static final Map<String, GroupTemplate> CFG_MAP = new HashMap<>();
-
+    /**
+     * beetl模板持有绑定数据，不可共用，每次由GroupTemplate获取，编译结果由GroupTemplate缓存
+     */
     @Override
     protected void setTemplateEngine(String dirPath, Supplier<GroupTemplate> supplier, String fileName) {
-        GroupTemplate groupTemplate = CFG_MAP.getOrDefault(dirPath, supplier.get());
+        GroupTemplate groupTemplate = TemplateRegistry.getEngine(this.getClass(), dirPath, supplier);
         templateEngine = groupTemplate.getTemplate(fileName);
     }
 
     @Override
     protected GroupTemplate getTemplateEngineSupplier(String dirPath) {
-        synchronized (BeetlTemplateHandler.class) {
-            GroupTemplate groupTemplate = CFG_MAP.get(dirPath);
-            if (groupTemplate != null) {
-                return groupTemplate;
-            }
-            ResourceLoader resourceLoader;
-            if (Objects.equals(dirPath, CLASSPATH)) {
-                resourceLoader = new ClasspathResourceLoader();
-            } else {
-                resourceLoader = new FileResourceLoader(dirPath, StandardCharsets.UTF_8.name());
-            }
-            Configuration cfg;
-            try {
-                cfg = Configuration.defaultConfiguration();
-            } catch (IOException e) {
-                throw new ExcelBuildException("Set Beetl configuration failure", e);
-            }
-            cfg.setCharset(CharEncoding.UTF_8);
-            groupTemplate = new GroupTemplate(resourceLoader, cfg);
-            CFG_MAP.put(dirPath, groupTemplate);
-            return groupTemplate;
+        ResourceLoader resourceLoader;
+        if (Objects.equals(dirPath, CLASSPATH)) {
+            resourceLoader = new ClasspathResourceLoader();
+        } else {
+            resourceLoader = new FileResourceLoader(dirPath, StandardCharsets.UTF_8.name());
+        }
+        Configuration cfg;
+        try {
+            cfg = Configuration.defaultConfiguration();
+        } catch (IOException e) {
+            throw new ExcelBuildException("Set Beetl configuration failure", e);
         }
+        cfg.setCharset(CharEncoding.UTF_8);
+        return new GroupTemplate(resourceLoader, cfg);
     }
 
     @Override
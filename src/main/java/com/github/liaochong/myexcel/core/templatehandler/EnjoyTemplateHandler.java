@@ -18,7 +18,6 @@ import com.jfinal.template.Engine;
 import com.jfinal.template.Template;
 
 import java.io.Writer;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -29,32 +28,29 @@ import java.util.function.Supplier;
  */
 public class EnjoyTemplateHandler extends AbstractTemplateHandler<Engine, Template> {
 
-    private static final Map<String, Engine> CFG_MAP = new HashMap<>();
-
     @Override
     protected void setTemplateEngine(String dirPath, Supplier<Engine> supplier, String fileName) {
-        Engine engine = CFG_MAP.getOrDefault(dirPath, supplier.get());
-        templateEngine = engine.getTemplate(fileName);
+        Engine engine = TemplateRegistry.getEngine(this.getClass(), dirPath, supplier);
+        templateEngine = TemplateRegistry.getTemplate(this.getClass(), dirPath, fileName, () -> engine.getTemplate(fileName));
     }
 
     @Override
     protected Engine getTemplateEngineSupplier(String dirPath) {
-        synchronized (EnjoyTemplateHandler.class) {
-            Engine engine = CFG_MAP.get(dirPath);
-            if (engine != null) {
-                return engine;
-            }
-            engine = Engine.create("myexcel_" + dirPath);
-            Engine.setFastMode(true);
-            if (Objects.equals(dirPath, CLASSPATH)) {
-                engine.setBaseTemplatePath(null);
-                engine.setToClassPathSourceFactory();
-            } else {
-                engine.setBaseTemplatePath(dirPath);
-            }
-            CFG_MAP.put(dirPath, engine);
+        String engineName = "myexcel_" + dirPath;
+        // 注册表清空后引擎仍由Enjoy持有，不可重复创建
+        Engine engine = Engine.use(engineName);
+        if (engine != null) {
             return engine;
         }
+        engine = Engine.create(engineName);
+        Engine.setFastMode(true);
+        if (Objects.equals(dirPath, CLASSPATH)) {
+            engine.setBaseTemplatePath(null);
+            engine.setToClassPathSourceFactory();
+        } else {
+            engine.setBaseTemplatePath(dirPath);
+        }
+        return engine;
     }
 
     @Override
@@ -33,7 +33,6 @@ import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -44,41 +43,28 @@ import java.util.function.Supplier;
  */
 public class FreemarkerTemplateHandler extends AbstractTemplateHandler<Configuration, Template> {
 
-    protected static final Map<String, Configuration> CFG_MAP = new HashMap<>();
-
     @Override
     protected void setTemplateEngine(String dirPath, Supplier<Configuration> supplier, String fileName) {
-        Configuration configuration = CFG_MAP.getOrDefault(dirPath, supplier.get());
-        try {
-            templateEngine = configuration.getTemplate(fileName);
-        } catch (IOException e) {
-            throw ExcelBuildException.of("Failed to get freemarker template", e);
-        }
+        Configuration configuration = TemplateRegistry.getEngine(this.getClass(), dirPath, supplier);
+        templateEngine = TemplateRegistry.getTemplate(this.getClass(), dirPath, fileName, () -> configuration.getTemplate(fileName));
     }
 
     @Override
     protected Configuration getTemplateEngineSupplier(String dirPath) {
-        synchronized (FreemarkerTemplateHandler.class) {
-            Configuration configuration = CFG_MAP.get(dirPath);
-            if (configuration != null) {
-                return configuration;
-            }
-            configuration = new Configuration(Configuration.VERSION_2_3_23);
-            configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
-            configuration.setDefaultEncoding(CharEncoding.UTF_8);
-            try {
-                if (Objects.equals(dirPath, CLASSPATH)) {
-                    configuration.setClassLoaderForTemplateLoading(Thread.currentThread().getContextClassLoader(), "/");
-                } else {
-                    configuration.setDirectoryForTemplateLoading(new File(dirPath));
-                }
-            } catch (IOException e) {
-                throw new ExcelBuildException("Set Freemarker directory failure", e);
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_23);
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setDefaultEncoding(CharEncoding.UTF_8);
+        try {
+            if (Objects.equals(dirPath, CLASSPATH)) {
+                configuration.setClassLoaderForTemplateLoading(Thread.currentThread().getContextClassLoader(), "/");
+            } else {
+                configuration.setDirectoryForTemplateLoading(new File(dirPath));
             }
-            setObjectWrapper(configuration);
-            CFG_MAP.put(dirPath, configuration);
-            return configuration;
+        } catch (IOException e) {
+            throw new ExcelBuildException("Set Freemarker directory failure", e);
         }
+        setObjectWrapper(configuration);
+        return configuration;
     }
 
     private void setObjectWrapper(Configuration configuration) {
@@ -14,13 +14,11 @@
  */
 package com.github.liaochong.myexcel.core.templatehandler;
 
-import com.github.liaochong.myexcel.exception.ExcelBuildException;
 import groovy.lang.Writable;
 import groovy.text.Template;
 import groovy.text.markup.MarkupTemplateEngine;
 import groovy.text.markup.TemplateConfiguration;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -44,16 +42,14 @@ public class GroovyTemplateHandler extends AbstractTemplateHandler<Template, Tem
 
     @Override
     public GroovyTemplateHandler classpathTemplate(String path) {
-        if (path.startsWith("/")) {
-            path = path.substring(1);
-        }
-        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
-             Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
-            templateEngine = ENGINE.createTemplate(reader);
-            return this;
-        } catch (ClassNotFoundException | IOException e) {
-            throw ExcelBuildException.of("Failed to get groovy template", e);
-        }
+        String resourcePath = path.startsWith("/") ? path.substring(1) : path;
+        templateEngine = TemplateRegistry.getTemplate(this.getClass(), CLASSPATH, resourcePath, () -> {
+            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(resourcePath);
+                 Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8)) {
+                return ENGINE.createTemplate(reader);
+            }
+        });
+        return this;
     }
 
     @Override
@@ -2,9 +2,11 @@ package com.github.liaochong.myexcel.core.templatehandler;
 
 import com.github.liaochong.myexcel.core.parser.ParseConfig;
 import com.github.liaochong.myexcel.core.parser.Table;
+import com.github.liaochong.myexcel.core.parser.Tr;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author liaochong
@@ -38,4 +40,20 @@ public interface TemplateHandler {
     <E> String render(Map<String, E> renderData);
 
     <F> List<Table> render(Map<String, F> renderData, ParseConfig parseConfig) throws Exception;
+
+    /**
+     * 渲染并逐行解析，每解析出一批行即交由trsConsumer；
+     * 默认解析出全部表格后逐表交出，支持流式解析的实现不构建完整DOM
+     *
+     * @param renderData  被渲染的数据
+     * @param parseConfig 解析配置
+     * @param trsConsumer 行消费者
+     * @param <F>         被渲染数据类型
+     * @throws Exception Exception
+     */
+    default <F> void render(Map<String, F> renderData, ParseConfig parseConfig, Consumer<List<Tr>> trsConsumer) throws Exception {
+        for (Table table : this.render(renderData, parseConfig)) {
+            trsConsumer.accept(table.getTrList());
+        }
+    }
 }
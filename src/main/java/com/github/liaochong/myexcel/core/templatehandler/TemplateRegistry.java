@@ -0,0 +1,213 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.core.templatehandler;
+
+import com.github.liaochong.myexcel.exception.ExcelBuildException;
+import com.github.liaochong.myexcel.utils.ReflectUtil;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 模板注册表，各模板处理器共用，按处理器、模板目录缓存模板引擎，按处理器、模板目录、模板名称缓存编译后的模板；
+ * 仅缓存可并发渲染的模板，文件模板可开启修改检查，修改后重新编译
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public final class TemplateRegistry {
+
+    private static final Map<Key, Object> ENGINES = new ConcurrentHashMap<>();
+
+    private static final Map<Key, CompiledTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    private static final LongAdder MISSES = new LongAdder();
+
+    /**
+     * 是否检查文件模板修改
+     */
+    private static volatile boolean reloadCheck;
+
+    private TemplateRegistry() {
+    }
+
+    /**
+     * 开启或关闭文件模板修改检查，开启后每次获取模板时比对文件修改时间，类路径模板不予检查
+     *
+     * @param reloadCheck 是否检查
+     */
+    public static void reloadCheck(boolean reloadCheck) {
+        TemplateRegistry.reloadCheck = reloadCheck;
+    }
+
+    /**
+     * 预编译类路径模板，使首次导出无需编译
+     *
+     * @param handlerClass 模板处理器
+     * @param path         类路径模板
+     */
+    public static void precompile(Class<? extends TemplateHandler> handlerClass, String path) {
+        ReflectUtil.newInstance(handlerClass).classpathTemplate(path);
+    }
+
+    /**
+     * 预编译文件模板，使首次导出无需编译
+     *
+     * @param handlerClass 模板处理器
+     * @param dirPath      模板目录
+     * @param fileName     模板名称
+     */
+    public static void precompile(Class<? extends TemplateHandler> handlerClass, String dirPath, String fileName) {
+        ReflectUtil.newInstance(handlerClass).fileTemplate(dirPath, fileName);
+    }
+
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * 清空全部引擎及模板，已获取的模板不受影响
+     */
+    public static void clear() {
+        TEMPLATES.clear();
+        ENGINES.clear();
+    }
+
+    /**
+     * 获取模板引擎，不存在时创建，同一处理器、同一目录仅创建一次
+     *
+     * @param handlerClass 模板处理器
+     * @param dirPath      模板目录
+     * @param supplier     引擎创建
+     * @param <C>          引擎类型
+     * @return 模板引擎
+     */
+    @SuppressWarnings("unchecked")
+    static <C> C getEngine(Class<?> handlerClass, String dirPath, Supplier<C> supplier) {
+        return (C) ENGINES.computeIfAbsent(new Key(handlerClass, dirPath, null), key -> supplier.get());
+    }
+
+    /**
+     * 获取编译后的模板，不存在或文件已修改时编译
+     *
+     * @param handlerClass 模板处理器
+     * @param dirPath      模板目录
+     * @param fileName     模板名称
+     * @param compiler     模板编译
+     * @param <T>          模板类型
+     * @return 模板
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T getTemplate(Class<?> handlerClass, String dirPath, String fileName, Compiler<T> compiler) {
+        Key key = new Key(handlerClass, dirPath, fileName);
+        CompiledTemplate compiledTemplate = TEMPLATES.get(key);
+        if (compiledTemplate != null && !isModified(compiledTemplate, dirPath, fileName)) {
+            HITS.increment();
+            return (T) compiledTemplate.template;
+        }
+        compiledTemplate = TEMPLATES.compute(key, (k, old) -> {
+            if (old != null && !isModified(old, dirPath, fileName)) {
+                return old;
+            }
+            MISSES.increment();
+            long lastModified = lastModified(dirPath, fileName);
+            try {
+                return new CompiledTemplate(compiler.compile(), lastModified);
+            } catch (Exception e) {
+                throw ExcelBuildException.of("Failed to compile template:" + fileName, e);
+            }
+        });
+        return (T) compiledTemplate.template;
+    }
+
+    private static boolean isModified(CompiledTemplate compiledTemplate, String dirPath, String fileName) {
+        return reloadCheck && compiledTemplate.lastModified != lastModified(dirPath, fileName);
+    }
+
+    private static long lastModified(String dirPath, String fileName) {
+        if (Objects.equals(dirPath, AbstractTemplateHandler.CLASSPATH)) {
+            return 0L;
+        }
+        return new File(dirPath, fileName).lastModified();
+    }
+
+    /**
+     * 模板编译
+     *
+     * @param <T> 模板类型
+     */
+    @FunctionalInterface
+    interface Compiler<T> {
+
+        T compile() throws Exception;
+    }
+
+    private static final class CompiledTemplate {
+
+        private final Object template;
+
+        private final long lastModified;
+
+        CompiledTemplate(Object template, long lastModified) {
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final class Key {
+
+        private final Class<?> handlerClass;
+
+        private final String dirPath;
+
+        private final String fileName;
+
+        private final int hash;
+
+        Key(Class<?> handlerClass, String dirPath, String fileName) {
+            this.handlerClass = handlerClass;
+            this.dirPath = dirPath;
+            this.fileName = fileName;
+            this.hash = Objects.hash(handlerClass, dirPath, fileName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return handlerClass == key.handlerClass && Objects.equals(dirPath, key.dirPath) && Objects.equals(fileName, key.fileName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.thymeleaf.templateresolver.FileTemplateResolver;
 import java.io.File;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -34,8 +33,6 @@ import java.util.function.Supplier;
  */
 public class ThymeleafTemplateHandler extends AbstractTemplateHandler<TemplateEngine, TemplateEngine> {
 
-    private static final Map<String, TemplateEngine> CFG_MAP = new HashMap<>();
-
     private String filePath;
 
     @Override
@@ -66,32 +63,25 @@ public class ThymeleafTemplateHandler extends AbstractTemplateHandler<TemplateEn
 
     @Override
     protected void setTemplateEngine(String dirPath, Supplier<TemplateEngine> supplier, String fileName) {
-        templateEngine = CFG_MAP.getOrDefault(dirPath, getTemplateEngineSupplier(dirPath));
+        templateEngine = TemplateRegistry.getEngine(this.getClass(), dirPath, () -> this.getTemplateEngineSupplier(dirPath));
     }
 
     @Override
     protected TemplateEngine getTemplateEngineSupplier(String dirPath) {
-        synchronized (ThymeleafTemplateHandler.class) {
-            TemplateEngine templateEngine = CFG_MAP.get(dirPath);
-            if (templateEngine != null) {
-                return templateEngine;
-            }
-            templateEngine = new TemplateEngine();
-            if (Objects.equals(dirPath, CLASSPATH)) {
-                ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
-                templateResolver.setCacheable(true);
-                templateResolver.setCharacterEncoding(StandardCharsets.UTF_8.name());
-                templateEngine.setTemplateResolver(templateResolver);
-            } else {
-                FileTemplateResolver templateResolver = new FileTemplateResolver();
-                templateResolver.setPrefix(dirPath);
-                templateResolver.setCacheable(false);
-                templateResolver.setCharacterEncoding(StandardCharsets.UTF_8.name());
-                templateEngine.setTemplateResolver(templateResolver);
-            }
-            CFG_MAP.put(dirPath, templateEngine);
-            return templateEngine;
+        TemplateEngine templateEngine = new TemplateEngine();
+        if (Objects.equals(dirPath, CLASSPATH)) {
+            ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+            templateResolver.setCacheable(true);
+            templateResolver.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            templateEngine.setTemplateResolver(templateResolver);
+        } else {
+            FileTemplateResolver templateResolver = new FileTemplateResolver();
+            templateResolver.setPrefix(dirPath);
+            templateResolver.setCacheable(false);
+            templateResolver.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            templateEngine.setTemplateResolver(templateResolver);
         }
+        return templateEngine;
     }
 
     @Override
@@ -41,7 +41,7 @@ public class VelocityTemplateHandler extends AbstractTemplateHandler<Template, T
 
     @Override
     public VelocityTemplateHandler classpathTemplate(String path) {
-        templateEngine = Velocity.getTemplate(path);
+        templateEngine = TemplateRegistry.getTemplate(this.getClass(), CLASSPATH, path, () -> Velocity.getTemplate(path));
         return this;
     }
 
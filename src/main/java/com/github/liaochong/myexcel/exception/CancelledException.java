@@ -0,0 +1,28 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.exception;
+
+/**
+ * 任务取消异常，任务被主动取消或超过截止时间时抛出
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public class CancelledException extends RuntimeException {
+
+    public CancelledException(String message) {
+        super(message);
+    }
+}
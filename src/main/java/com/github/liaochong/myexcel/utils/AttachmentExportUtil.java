@@ -139,7 +139,7 @@ public final class AttachmentExportUtil {
         try {
             response.setContentType("application/octet-stream");
             setAttachmentConfig(fileName, response);
-            response.getOutputStream().write(Files.readAllBytes(path));
+            Files.copy(path, response.getOutputStream());
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -147,6 +147,26 @@ public final class AttachmentExportUtil {
         }
     }
 
+    /**
+     * 设置xlsx附件响应头并获取响应流，用于流式构建直接写出
+     *
+     * @param fileName 导出后文件名称，无需后缀
+     * @param response 响应流
+     * @return 响应输出流
+     */
+    public static OutputStream getXlsxOutputStream(String fileName, HttpServletResponse response) {
+        try {
+            if (!fileName.endsWith(Constants.XLSX)) {
+                fileName += Constants.XLSX;
+            }
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            setAttachmentConfig(fileName, response);
+            return response.getOutputStream();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static void setAttachmentConfig(String fileName, HttpServletResponse response) throws UnsupportedEncodingException {
         response.setCharacterEncoding(CharEncoding.UTF_8);
         response.addHeader("Content-Disposition", "attachment;filename=" + URLEncoder.encode(fileName, CharEncoding.UTF_8).replace("+", "%20"));
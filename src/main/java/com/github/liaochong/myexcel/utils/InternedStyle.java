@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 liaochong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liaochong.myexcel.utils;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 驻留样式，内容相同的样式共用同一不可变实例，哈希值预先计算；
+ * 同一实例直接判等，驻留表清空后重新驻留的实例按内容判等
+ *
+ * @author liaochong
+ * @version 1.0
+ */
+public final class InternedStyle extends AbstractMap<String, String> {
+
+    private final Map<String, String> style;
+
+    private final int hash;
+
+    InternedStyle(Map<String, String> style) {
+        this.style = Collections.unmodifiableMap(style);
+        this.hash = style.hashCode();
+    }
+
+    @Override
+    public String get(Object key) {
+        return style.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return style.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return style.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return style.isEmpty();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super String> action) {
+        style.forEach(action);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return style.entrySet();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof InternedStyle && hash != ((InternedStyle) o).hash) {
+            return false;
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
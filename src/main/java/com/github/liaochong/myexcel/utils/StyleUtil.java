@@ -15,13 +15,12 @@
  */
 package com.github.liaochong.myexcel.utils;
 
-import com.github.liaochong.myexcel.core.cache.Cache;
-import com.github.liaochong.myexcel.core.cache.WeakCache;
 import org.jsoup.nodes.Element;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 样式工具
@@ -30,20 +29,50 @@ import java.util.Map;
  * @version 1.0
  */
 public final class StyleUtil {
+    /**
+     * 各缓存表容量上限，达到上限时清空重建，避免数据驱动的样式无限增长
+     */
+    private static final int MAX_INTERNED = 8192;
+
+    private static final InternedStyle EMPTY = new InternedStyle(Collections.emptyMap());
+
+    private static final Map<String, InternedStyle> STYLE_CACHE = new ConcurrentHashMap<>();
 
-    private static final Cache<String, Map<String, String>> STYLE_CACHE = new WeakCache<>();
+    private static final Map<Map<String, String>, InternedStyle> INTERNED_STYLES = new ConcurrentHashMap<>();
+
+    private static final Map<MixKey, InternedStyle> MIXED_STYLES = new ConcurrentHashMap<>();
 
     public static Map<String, String> parseStyle(Element element) {
         String style = element.attr("style");
         return parseStyle(style);
     }
 
-
+    /**
+     * 解析样式
+     *
+     * @param style 样式字符串
+     * @return 可修改的新样式
+     */
     public static Map<String, String> parseStyle(String style) {
+        return new HashMap<>(parseInternedStyle(style));
+    }
+
+    public static Map<String, String> parseInternedStyle(Element element) {
+        String style = element.attr("style");
+        return parseInternedStyle(style);
+    }
+
+    /**
+     * 解析样式，相同样式字符串仅解析一次
+     *
+     * @param style 样式字符串
+     * @return 不可修改的驻留样式
+     */
+    public static Map<String, String> parseInternedStyle(String style) {
         if (style.length() == 0) {
-            return Collections.emptyMap();
+            return EMPTY;
         }
-        Map<String, String> cacheResult = STYLE_CACHE.get(style);
+        InternedStyle cacheResult = STYLE_CACHE.get(style);
         if (cacheResult != null) {
             return cacheResult;
         }
@@ -65,31 +94,122 @@ public final class StyleUtil {
             }
             result.put(styleName, styleValue);
         }
-        STYLE_CACHE.cache(style, result);
-        return result;
+        InternedStyle interned = intern(result);
+        if (STYLE_CACHE.size() >= MAX_INTERNED) {
+            STYLE_CACHE.clear();
+        }
+        STYLE_CACHE.put(style, interned);
+        return interned;
     }
 
+    /**
+     * 驻留样式，内容相同时返回同一实例；驻留表达到上限时清空重建
+     *
+     * @param style 样式
+     * @return 不可修改的驻留样式
+     */
+    public static InternedStyle intern(Map<String, String> style) {
+        if (style instanceof InternedStyle) {
+            return (InternedStyle) style;
+        }
+        if (style == null || style.isEmpty()) {
+            return EMPTY;
+        }
+        InternedStyle interned = INTERNED_STYLES.get(style);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED_STYLES.size() >= MAX_INTERNED) {
+            INTERNED_STYLES.clear();
+        }
+        return INTERNED_STYLES.computeIfAbsent(new HashMap<>(style), InternedStyle::new);
+    }
 
     /**
-     * 样式融合
+     * 样式融合，目标样式覆盖源样式
      *
      * @param originStyle 源样式
      * @param targetStyle 目标样式
-     * @return 结果
+     * @return 可修改的新样式
      */
     public static Map<String, String> mixStyle(Map<String, String> originStyle, Map<String, String> targetStyle) {
         if (targetStyle == null && originStyle == null) {
-            return Collections.emptyMap();
+            return new HashMap<>();
         }
         if (targetStyle == null) {
             return new HashMap<>(originStyle);
         } else if (originStyle == null) {
             return new HashMap<>(targetStyle);
         }
+        return merge(originStyle, targetStyle);
+    }
+
+    /**
+     * 样式融合，目标样式覆盖源样式，结果按两者驻留样式缓存
+     *
+     * @param originStyle 源样式
+     * @param targetStyle 目标样式
+     * @return 不可修改的驻留样式
+     */
+    public static Map<String, String> mixInternedStyle(Map<String, String> originStyle, Map<String, String> targetStyle) {
+        InternedStyle origin = intern(originStyle);
+        InternedStyle target = intern(targetStyle);
+        if (target.isEmpty()) {
+            return origin;
+        }
+        if (origin.isEmpty()) {
+            return target;
+        }
+        MixKey key = new MixKey(origin, target);
+        InternedStyle mixed = MIXED_STYLES.get(key);
+        if (mixed != null) {
+            return mixed;
+        }
+        mixed = intern(merge(origin, target));
+        if (MIXED_STYLES.size() >= MAX_INTERNED) {
+            MIXED_STYLES.clear();
+        }
+        MIXED_STYLES.put(key, mixed);
+        return mixed;
+    }
+
+    private static Map<String, String> merge(Map<String, String> originStyle, Map<String, String> targetStyle) {
         // 相加的两倍，防止扩容。
         Map<String, String> result = new HashMap<>((targetStyle.size() + originStyle.size()) * 2);
         originStyle.forEach(result::putIfAbsent);
         targetStyle.forEach(result::put);
         return result;
     }
+
+    private static final class MixKey {
+
+        private final InternedStyle originStyle;
+
+        private final InternedStyle targetStyle;
+
+        private final int hash;
+
+        MixKey(InternedStyle originStyle, InternedStyle targetStyle) {
+            this.originStyle = originStyle;
+            this.targetStyle = targetStyle;
+            this.hash = 31 * originStyle.hashCode() + targetStyle.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MixKey)) {
+                return false;
+            }
+            MixKey key = (MixKey) o;
+            return originStyle.equals(key.originStyle) && targetStyle.equals(key.targetStyle);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
 }
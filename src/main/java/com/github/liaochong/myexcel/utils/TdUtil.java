@@ -28,8 +28,6 @@ import java.util.regex.Pattern;
  */
 public final class TdUtil {
 
-    private static Pattern chineseOrCapitalPattern = Pattern.compile("[\u4e00-\u9fa5|A-Z]");
-
     private static Pattern digitalPattern = Pattern.compile("^\\d+$");
 
     private static Pattern nonDigitalPattern = Pattern.compile("[^\\d]+");
@@ -70,13 +68,11 @@ public final class TdUtil {
         }
         // 最小为1
         double valueLength = 1;
-        // 获取字段值的长度，如果含中文字符，则每个中文字符长度为1，否则为0.5
+        // 获取字段值的长度，如果含中文等全角字符或大写字母，则每个字符长度为1，否则为0.5
         double chineseOrCapitalShift = 1 + shift;
         double otherShift = 0.5 + shift;
         for (int i = 0, size = s.length(); i < size; i++) {
-            // 获取一个字符
-            String temp = s.substring(i, i + 1);
-            if (chineseOrCapitalPattern.matcher(temp).find()) {
+            if (isWideChar(s.charAt(i))) {
                 valueLength += chineseOrCapitalShift;
             } else {
                 valueLength += otherShift;
@@ -86,6 +82,39 @@ public final class TdUtil {
         return (int) Math.ceil(valueLength);
     }
 
+    /**
+     * 估算单元格内容宽度，日期按格式计算，格式长于内容时以格式为准
+     *
+     * @param content 内容
+     * @param format  格式
+     * @param date    是否为日期
+     * @return 宽度
+     */
+    public static int getCellWidth(String content, String format, boolean date) {
+        if (format == null) {
+            return getStringWidth(content);
+        }
+        if (date) {
+            return getStringWidth(format, -0.15);
+        }
+        int width = getStringWidth(content);
+        if (content != null && format.length() > content.length()) {
+            return Math.max(width, getStringWidth(format));
+        }
+        return width;
+    }
+
+    /**
+     * 是否为宽字符：中日韩文字、全角符号及大写字母
+     */
+    private static boolean isWideChar(char c) {
+        return (c >= 'A' && c <= 'Z')
+                || (c >= '\u4e00' && c <= '\u9fa5')
+                || (c >= '\u3000' && c <= '\u303f')
+                || (c >= '\uff01' && c <= '\uff60')
+                || (c >= '\uffe0' && c <= '\uffe6');
+    }
+
     public static int getValue(String v) {
         if (v == null) {
             return -1;
@@ -14,7 +14,11 @@
  */
 package com.github.liaochong.myexcel.core;
 
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+
 import java.io.File;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -23,7 +27,19 @@ import java.nio.file.Paths;
  */
 public class BasicTest {
 
-    public static final String TEST_OUTPUT_DIR = new File("myexcel").getAbsolutePath() + File.separator;
+    /**
+     * 测试输出目录，每个测试类使用独立的临时目录，测试结束后删除
+     */
+    @TempDir
+    static Path testOutputDir;
+
+    public static String TEST_OUTPUT_DIR;
+
     public static final String TEST_RESOURCES_DIR = Paths.get("src","test","resources").toFile()
                                                          .getAbsolutePath() + File.separator;
+
+    @BeforeAll
+    static void initTestOutputDir() {
+        TEST_OUTPUT_DIR = testOutputDir.toAbsolutePath() + File.separator;
+    }
 }
@@ -2,18 +2,33 @@ package com.github.liaochong.myexcel.core;
 
 import com.github.liaochong.myexcel.core.pojo.CsvPeople;
 import com.github.liaochong.myexcel.core.pojo.MultiPeople;
+import com.github.liaochong.myexcel.exception.CancelledException;
+import com.github.liaochong.myexcel.exception.CsvBuildException;
+import com.github.liaochong.myexcel.utils.TempFileOperator;
+import org.apache.poi.util.IOUtils;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * @author liaochong
@@ -94,6 +109,154 @@ class CsvBuilderTest extends BasicTest {
         csv.write(Paths.get(TEST_OUTPUT_DIR + "no_titles_append.csv"));
     }
 
+    @Test
+    void compressedBuild() throws Exception {
+        Path target = Paths.get(TEST_OUTPUT_DIR + "compressed.csv.gz");
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).compressed();
+        for (int i = 0; i < 10; i++) {
+            csvBuilder.append(data(1000));
+        }
+        Csv csv = csvBuilder.build();
+        csv.write(target);
+
+        List<CsvPeople> csvPeoples = SaxExcelReader.of(CsvPeople.class).rowFilter(row -> row.getRowNum() > 0).read(target.toFile());
+        Assertions.assertEquals(10000, csvPeoples.size());
+        Assertions.assertEquals("张三\"", csvPeoples.get(0).getName());
+        Assertions.assertEquals("李四", csvPeoples.get(1).getName());
+        Assertions.assertTrue(csvPeoples.get(0).isDance());
+        Assertions.assertEquals(0, new BigDecimal(109898).compareTo(csvPeoples.get(0).getMoney()));
+
+        // 追加至已有压缩文件时跳过bom，作为新的gzip成员写入
+        csv = CsvBuilder.of(CsvPeople.class).noTitles().compressed().build(data(500));
+        csv.write(target, true);
+        csvPeoples = SaxExcelReader.of(CsvPeople.class).rowFilter(row -> row.getRowNum() > 0).read(target.toFile());
+        Assertions.assertEquals(10500, csvPeoples.size());
+        Assertions.assertEquals("张三\"", csvPeoples.get(10000).getName());
+        byte[] content;
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(target))) {
+            content = IOUtils.toByteArray(is);
+        }
+        int boms = 0;
+        for (int i = 0; i + 2 < content.length; i++) {
+            if (content[i] == (byte) 0xEF && content[i + 1] == (byte) 0xBB && content[i + 2] == (byte) 0xBF) {
+                boms++;
+            }
+        }
+        Assertions.assertEquals(1, boms);
+    }
+
+    @Test
+    void writeToOutputStream() throws Exception {
+        try (OutputStream os = Files.newOutputStream(Paths.get(TEST_OUTPUT_DIR + "output_stream.csv"))) {
+            CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).writeTo(os);
+            Assertions.assertThrows(IllegalStateException.class, csvBuilder::compressed);
+            Assertions.assertThrows(IllegalStateException.class, csvBuilder::noTitles);
+            for (int i = 0; i < 10; i++) {
+                csvBuilder.append(data(1000));
+            }
+            csvBuilder.build();
+        }
+    }
+
+    @Test
+    void parallelBuild() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).threadPool(executorService);
+        int age = 0;
+        for (int i = 0; i < 10; i++) {
+            // 前面的批次更大，渲染完成顺序与追加顺序不同
+            List<CsvPeople> peoples = data((10 - i) * 300);
+            for (CsvPeople people : peoples) {
+                people.setAge(age++);
+            }
+            csvBuilder.append(peoples);
+        }
+        Csv csv = csvBuilder.build();
+        List<String> lines = Files.readAllLines(csv.getFilePath(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(age + 1, lines.size());
+        for (int i = 1; i < lines.size(); i++) {
+            Assertions.assertEquals(String.valueOf(i - 1), lines.get(i).split(",")[1]);
+        }
+        csv.write(Paths.get(TEST_OUTPUT_DIR + "parallel.csv"));
+        executorService.shutdown();
+    }
+
+    @Test
+    void parallelFailureBuild() {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        CsvBuilder<Map> csvBuilder = CsvBuilder.of(Map.class).titles(Collections.singletonList("值")).threadPool(executorService);
+        Map<String, Object> broken = Collections.singletonMap("value", new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("render failure");
+            }
+        });
+        try {
+            // 渲染失败后追加及构建均抛出异常，后续批次不会无限暂存
+            CsvBuildException e = Assertions.assertThrows(CsvBuildException.class, () -> {
+                csvBuilder.append(Collections.singletonList(Collections.singletonMap("value", 1)));
+                csvBuilder.append(Collections.singletonList(broken));
+                for (int i = 0; i < 200; i++) {
+                    csvBuilder.append(Collections.singletonList(Collections.singletonMap("value", i)));
+                }
+                csvBuilder.build();
+            });
+            Assertions.assertEquals("render failure", e.getCause().getMessage());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void capacityBuild() {
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).capacity(1000)
+                .pathConsumer(path -> System.out.println("Finished:" + path));
+        for (int i = 0; i < 10; i++) {
+            csvBuilder.append(data(500));
+        }
+        List<Path> paths = csvBuilder.buildAsPaths();
+        System.out.println(paths.size());
+        paths.forEach(TempFileOperator::deleteTempFile);
+    }
+
+    @Test
+    void cancelBuild() {
+        CancellationToken cancellationToken = new CancellationToken();
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).capacity(1000).cancellationToken(cancellationToken);
+        csvBuilder.append(data(1500));
+        cancellationToken.cancel();
+        Assertions.assertThrows(CancelledException.class, () -> csvBuilder.append(data(500)));
+        Assertions.assertThrows(CancelledException.class, csvBuilder::buildAsPaths);
+    }
+
+    @Test
+    void capacityBuildAsZip() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).capacity(1000).threadPool(executorService);
+        for (int i = 0; i < 10; i++) {
+            csvBuilder.append(data(500));
+        }
+        Path zip = csvBuilder.buildAsZip("common");
+        Files.move(zip, Paths.get(TEST_OUTPUT_DIR + "capacity.zip"), StandardCopyOption.REPLACE_EXISTING);
+        executorService.shutdown();
+    }
+
+    @Test
+    void zippedBuildAsZip() throws Exception {
+        CsvBuilder<CsvPeople> csvBuilder = CsvBuilder.of(CsvPeople.class).capacity(1000).zipped();
+        for (int i = 0; i < 10; i++) {
+            csvBuilder.append(data(500));
+        }
+        Path zip = csvBuilder.buildAsZip("zipped");
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Assertions.assertEquals(6, zipFile.size());
+            Assertions.assertNotNull(zipFile.getEntry("zipped (1).csv"));
+            Assertions.assertNotNull(zipFile.getEntry("zipped (6).csv"));
+        } finally {
+            Files.deleteIfExists(zip);
+        }
+    }
+
     private List<CsvPeople> data(int size) {
         BigDecimal oddMoney = new BigDecimal(109898);
         BigDecimal evenMoney = new BigDecimal(66666);
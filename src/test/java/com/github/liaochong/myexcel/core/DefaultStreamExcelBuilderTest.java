@@ -3,20 +3,34 @@ package com.github.liaochong.myexcel.core;
 import com.github.liaochong.myexcel.core.pojo.CommonPeople;
 import com.github.liaochong.myexcel.core.pojo.CustomStylePeople;
 import com.github.liaochong.myexcel.core.pojo.Formula;
+import com.github.liaochong.myexcel.core.pojo.FormulaCommonPeople;
 import com.github.liaochong.myexcel.core.pojo.MultiPeople;
 import com.github.liaochong.myexcel.core.pojo.OddEvenStylePeople;
 import com.github.liaochong.myexcel.core.pojo.Product;
 import com.github.liaochong.myexcel.core.pojo.WidthPeople;
+import com.github.liaochong.myexcel.core.strategy.WidthStrategy;
 import com.github.liaochong.myexcel.core.templatehandler.FreemarkerTemplateHandler;
+import com.github.liaochong.myexcel.exception.CancelledException;
+import com.github.liaochong.myexcel.exception.ExcelBuildException;
 import com.github.liaochong.myexcel.utils.FileExportUtil;
+import com.github.liaochong.myexcel.utils.StyleUtil;
 import com.github.liaochong.myexcel.utils.TempFileOperator;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -27,6 +41,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
 
 /**
  * @author liaochong
@@ -86,6 +102,52 @@ class DefaultStreamExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    void asyncAppendFailureBuild() throws Exception {
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .threadPool(Executors.newFixedThreadPool(4))
+                .start()) {
+            for (int i = 0; i < 20; i++) {
+                int index = i;
+                excelBuilder.asyncAppend(() -> {
+                    if (index == 3) {
+                        throw new IllegalStateException("render failure");
+                    }
+                    return dataList();
+                });
+            }
+            ExcelBuildException e = Assertions.assertTimeoutPreemptively(Duration.ofMinutes(1),
+                    () -> Assertions.assertThrows(ExcelBuildException.class, excelBuilder::build));
+            Assertions.assertEquals("render failure", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void timeoutBuild() throws Exception {
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .start()) {
+            data(excelBuilder, 10000);
+            Workbook workbook = excelBuilder.build(Duration.ofMinutes(1));
+            FileExportUtil.export(workbook, new File(TEST_OUTPUT_DIR + "timeout_build.xlsx"));
+        }
+    }
+
+    @Test
+    void waitStrategyBuild() throws Exception {
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .waitQueueSize(100)
+                .waitStrategy(WaitStrategy.yielding())
+                .start()) {
+            for (int i = 0; i < 10; i++) {
+                excelBuilder.append(dataList());
+            }
+            Workbook workbook = excelBuilder.build();
+            Assertions.assertEquals(10001, workbook.getSheetAt(0).getLastRowNum());
+            FileExportUtil.export(workbook, new File(TEST_OUTPUT_DIR + "wait_strategy_build.xlsx"));
+        }
+    }
+
     @Test
     void customWidthBuild() throws Exception {
         try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
@@ -122,6 +184,64 @@ class DefaultStreamExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    void directWriteRawCopyBuild() throws Exception {
+        List<CommonPeople> dataList = dataList();
+        Path existing = Paths.get(TEST_OUTPUT_DIR + "raw_copy_existing.xlsx");
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .start()) {
+            excelBuilder.append(dataList);
+            FileExportUtil.export(excelBuilder.build(), existing.toFile());
+        }
+        try (InputStream inputStream = Files.newInputStream(existing);
+             Workbook workbook = WorkbookFactory.create(inputStream)) {
+            workbook.getSheetAt(0).setColumnHidden(1, true);
+            workbook.getSheetAt(0).setColumnWidth(2, 3001);
+            FileExportUtil.export(workbook, existing.toFile());
+        }
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class, existing)
+                .fixedTitles()
+                .directWrite()
+                .start()) {
+            excelBuilder.append(dataList);
+            List<Path> paths = excelBuilder.buildAsPaths();
+            try {
+                Assertions.assertEquals(1, paths.size());
+                DataFormatter formatter = new DataFormatter();
+                try (Workbook expected = WorkbookFactory.create(existing.toFile());
+                     Workbook actual = WorkbookFactory.create(paths.get(0).toFile())) {
+                    Sheet expectedSheet = expected.getSheetAt(0);
+                    Sheet actualSheet = actual.getSheetAt(0);
+                    int existingLastRowNum = expectedSheet.getLastRowNum();
+                    Assertions.assertEquals(existingLastRowNum + dataList.size(), actualSheet.getLastRowNum());
+                    Assertions.assertEquals(expectedSheet.getNumMergedRegions(), actualSheet.getNumMergedRegions());
+                    // 已有列定义及视图原样保留
+                    Assertions.assertTrue(actualSheet.isColumnHidden(1));
+                    Assertions.assertEquals(expectedSheet.getColumnWidth(2), actualSheet.getColumnWidth(2));
+                    Assertions.assertEquals(expectedSheet.getPaneInformation().getHorizontalSplitPosition(),
+                            actualSheet.getPaneInformation().getHorizontalSplitPosition());
+                    for (int r = 0; r <= existingLastRowNum; r++) {
+                        org.apache.poi.ss.usermodel.Row expectedRow = expectedSheet.getRow(r);
+                        org.apache.poi.ss.usermodel.Row actualRow = actualSheet.getRow(r);
+                        for (int c = 0; c < expectedRow.getLastCellNum(); c++) {
+                            Assertions.assertEquals(formatter.formatCellValue(expectedRow.getCell(c)), formatter.formatCellValue(actualRow.getCell(c)));
+                            Assertions.assertEquals(expectedRow.getCell(c).getCellStyle().getDataFormatString(),
+                                    actualRow.getCell(c).getCellStyle().getDataFormatString());
+                        }
+                    }
+                    org.apache.poi.ss.usermodel.Row firstDataRow = expectedSheet.getRow(existingLastRowNum - dataList.size() + 1);
+                    org.apache.poi.ss.usermodel.Row appendedRow = actualSheet.getRow(existingLastRowNum + 1);
+                    for (int c = 0; c < firstDataRow.getLastCellNum(); c++) {
+                        Assertions.assertEquals(formatter.formatCellValue(firstDataRow.getCell(c)), formatter.formatCellValue(appendedRow.getCell(c)));
+                    }
+                }
+            } finally {
+                TempFileOperator.deleteTempFiles(paths);
+            }
+        }
+    }
+
     @Test
     void cancelBuild() throws Exception {
         try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
@@ -133,6 +253,24 @@ class DefaultStreamExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    void deadlineBuild() throws Exception {
+        CancellationToken cancellationToken = new CancellationToken(Duration.ofSeconds(2));
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .cancellationToken(cancellationToken)
+                .start()) {
+            List<CommonPeople> dataList = dataList();
+            Assertions.assertThrows(CancelledException.class, () -> {
+                while (true) {
+                    excelBuilder.append(dataList);
+                }
+            });
+            Assertions.assertTrue(cancellationToken.isCancelled());
+            Assertions.assertThrows(CancelledException.class, excelBuilder::build);
+        }
+    }
+
     @Test
     void buildAsPaths() throws Exception {
         List<Path> paths = null;
@@ -163,6 +301,313 @@ class DefaultStreamExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    void directWriteBuild() throws Exception {
+        List<CommonPeople> dataList = dataList();
+        try (DefaultStreamExcelBuilder<CommonPeople> poiBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .widths(15, 20, 25, 30)
+                .capacity(300)
+                .start();
+             DefaultStreamExcelBuilder<CommonPeople> directBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                     .fixedTitles()
+                     .widths(15, 20, 25, 30)
+                     .capacity(300)
+                     .directWrite()
+                     .start()) {
+            poiBuilder.append(dataList);
+            directBuilder.append(dataList);
+            List<Path> poiPaths = poiBuilder.buildAsPaths();
+            List<Path> directPaths = directBuilder.buildAsPaths();
+            try {
+                Assertions.assertEquals(poiPaths.size(), directPaths.size());
+                DataFormatter formatter = new DataFormatter();
+                for (int i = 0; i < poiPaths.size(); i++) {
+                    try (Workbook expected = WorkbookFactory.create(poiPaths.get(i).toFile());
+                         Workbook actual = WorkbookFactory.create(directPaths.get(i).toFile())) {
+                        Sheet expectedSheet = expected.getSheetAt(0);
+                        Sheet actualSheet = actual.getSheetAt(0);
+                        Assertions.assertEquals(expectedSheet.getLastRowNum(), actualSheet.getLastRowNum());
+                        Assertions.assertEquals(expectedSheet.getPaneInformation().getHorizontalSplitPosition(),
+                                actualSheet.getPaneInformation().getHorizontalSplitPosition());
+                        Assertions.assertEquals(expectedSheet.getPrintSetup().getFitWidth(), actualSheet.getPrintSetup().getFitWidth());
+                        Assertions.assertEquals(expectedSheet.getPrintSetup().getFitHeight(), actualSheet.getPrintSetup().getFitHeight());
+                        for (int col = 0; col < 4; col++) {
+                            Assertions.assertEquals(expectedSheet.getColumnWidth(col), actualSheet.getColumnWidth(col));
+                        }
+                        for (int r = 0; r <= expectedSheet.getLastRowNum(); r++) {
+                            org.apache.poi.ss.usermodel.Row expectedRow = expectedSheet.getRow(r);
+                            org.apache.poi.ss.usermodel.Row actualRow = actualSheet.getRow(r);
+                            Assertions.assertEquals(expectedRow.getHeightInPoints(), actualRow.getHeightInPoints());
+                            Assertions.assertEquals(expectedRow.getLastCellNum(), actualRow.getLastCellNum());
+                            for (int c = 0; c < expectedRow.getLastCellNum(); c++) {
+                                Assertions.assertEquals(formatter.formatCellValue(expectedRow.getCell(c)), formatter.formatCellValue(actualRow.getCell(c)));
+                                Assertions.assertEquals(expectedRow.getCell(c).getCellStyle().getDataFormatString(),
+                                        actualRow.getCell(c).getCellStyle().getDataFormatString());
+                            }
+                        }
+                    }
+                }
+            } finally {
+                TempFileOperator.deleteTempFiles(poiPaths);
+                TempFileOperator.deleteTempFiles(directPaths);
+            }
+        }
+    }
+
+    @Test
+    void directWriteNonFiniteBuild() throws Exception {
+        List<String> titles = new ArrayList<>();
+        titles.add("1");
+        titles.add("2");
+        titles.add("3");
+        Map<String, Double> data = new HashMap<>();
+        data.put("1", Double.NaN);
+        data.put("2", Double.POSITIVE_INFINITY);
+        data.put("3", 1.5);
+        List<Path> paths = null;
+        try (DefaultStreamExcelBuilder<Map> excelBuilder = DefaultStreamExcelBuilder.of(Map.class)
+                .fieldDisplayOrder(titles)
+                .directWrite()
+                .start()) {
+            excelBuilder.append(data);
+            paths = excelBuilder.buildAsPaths();
+            try (Workbook workbook = WorkbookFactory.create(paths.get(0).toFile())) {
+                org.apache.poi.ss.usermodel.Row row = workbook.getSheetAt(0).getRow(0);
+                Assertions.assertEquals(CellType.ERROR, row.getCell(0).getCellType());
+                Assertions.assertEquals(CellType.ERROR, row.getCell(1).getCellType());
+                Assertions.assertEquals(1.5, row.getCell(2).getNumericCellValue());
+            }
+        } finally {
+            TempFileOperator.deleteTempFiles(paths);
+        }
+    }
+
+    @Test
+    void directWriteEscapedTextBuild() throws Exception {
+        List<String> titles = new ArrayList<>();
+        titles.add("1");
+        titles.add("2");
+        titles.add("3");
+        Map<String, String> data = new HashMap<>();
+        data.put("1", "_x0041_");
+        data.put("2", "a_x00e9_b_x12_");
+        data.put("3", "c\u0001d");
+        List<Path> paths = null;
+        try (DefaultStreamExcelBuilder<Map> excelBuilder = DefaultStreamExcelBuilder.of(Map.class)
+                .fieldDisplayOrder(titles)
+                .directWrite()
+                .start()) {
+            excelBuilder.append(data);
+            paths = excelBuilder.buildAsPaths();
+            try (Workbook workbook = WorkbookFactory.create(paths.get(0).toFile())) {
+                org.apache.poi.ss.usermodel.Row row = workbook.getSheetAt(0).getRow(0);
+                Assertions.assertEquals("_x0041_", row.getCell(0).getStringCellValue());
+                Assertions.assertEquals("a_x00e9_b_x12_", row.getCell(1).getStringCellValue());
+                Assertions.assertEquals("c\u0001d", row.getCell(2).getStringCellValue());
+            }
+        } finally {
+            TempFileOperator.deleteTempFiles(paths);
+        }
+    }
+
+    @Test
+    void compactRowBuild() throws Exception {
+        List<CommonPeople> dataList = dataList();
+        // 公式列使行以普通单元格形式创建，与紧凑行逐个单元格比对
+        List<FormulaCommonPeople> formulaDataList = dataList.stream().map(people -> {
+            FormulaCommonPeople formulaPeople = new FormulaCommonPeople();
+            formulaPeople.setName(people.getName());
+            formulaPeople.setAge(people.getAge());
+            formulaPeople.setDance(people.isDance());
+            formulaPeople.setMoney(people.getMoney());
+            formulaPeople.setBirthday(people.getBirthday());
+            formulaPeople.setLocalDate(people.getLocalDate());
+            formulaPeople.setLocalDateTime(people.getLocalDateTime());
+            formulaPeople.setCats(people.getCats());
+            return formulaPeople;
+        }).collect(Collectors.toList());
+        File expectedFile = new File(TEST_OUTPUT_DIR + "td_row_build.xlsx");
+        File actualFile = new File(TEST_OUTPUT_DIR + "compact_row_build.xlsx");
+        try (DefaultStreamExcelBuilder<FormulaCommonPeople> tdBuilder = DefaultStreamExcelBuilder.of(FormulaCommonPeople.class).start();
+             DefaultStreamExcelBuilder<CommonPeople> compactBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class).start()) {
+            tdBuilder.append(formulaDataList);
+            compactBuilder.append(dataList);
+            FileExportUtil.export(tdBuilder.build(), expectedFile);
+            FileExportUtil.export(compactBuilder.build(), actualFile);
+        }
+        DataFormatter formatter = new DataFormatter();
+        try (Workbook expected = WorkbookFactory.create(expectedFile); Workbook actual = WorkbookFactory.create(actualFile)) {
+            Sheet expectedSheet = expected.getSheetAt(0);
+            Sheet actualSheet = actual.getSheetAt(0);
+            Assertions.assertEquals(expectedSheet.getLastRowNum(), actualSheet.getLastRowNum());
+            int firstDataRow = actualSheet.getLastRowNum() - dataList.size() + 1;
+            for (int r = firstDataRow; r <= expectedSheet.getLastRowNum(); r++) {
+                org.apache.poi.ss.usermodel.Row expectedRow = expectedSheet.getRow(r);
+                org.apache.poi.ss.usermodel.Row actualRow = actualSheet.getRow(r);
+                Assertions.assertEquals(expectedRow.getLastCellNum() - 1, actualRow.getLastCellNum());
+                Assertions.assertEquals(CellType.FORMULA, expectedRow.getCell(expectedRow.getLastCellNum() - 1).getCellType());
+                for (int c = 0; c < actualRow.getLastCellNum(); c++) {
+                    Assertions.assertEquals(expectedRow.getCell(c).getCellType(), actualRow.getCell(c).getCellType());
+                    Assertions.assertEquals(formatter.formatCellValue(expectedRow.getCell(c)), formatter.formatCellValue(actualRow.getCell(c)));
+                    Assertions.assertEquals(expectedRow.getCell(c).getCellStyle().getDataFormatString(),
+                            actualRow.getCell(c).getCellStyle().getDataFormatString());
+                }
+            }
+        }
+    }
+
+    @Test
+    void estimatedWidthBuild() throws Exception {
+        List<CommonPeople> dataList = dataList();
+        try (DefaultStreamExcelBuilder<CommonPeople> poiBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .widthStrategy(WidthStrategy.AUTO_WIDTH)
+                .autoWidthSampling(100, 10)
+                .width(7, 30)
+                .start();
+             DefaultStreamExcelBuilder<CommonPeople> directBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                     .widthStrategy(WidthStrategy.AUTO_WIDTH)
+                     .autoWidthSampling(100, 10)
+                     .width(7, 30)
+                     .directWrite()
+                     .start()) {
+            poiBuilder.append(dataList);
+            directBuilder.append(dataList);
+            File poiFile = new File(TEST_OUTPUT_DIR + "estimated_width_build.xlsx");
+            FileExportUtil.export(poiBuilder.build(), poiFile);
+            List<Path> directPaths = directBuilder.buildAsPaths();
+            try {
+                try (Workbook expected = WorkbookFactory.create(poiFile);
+                     Workbook actual = WorkbookFactory.create(directPaths.get(0).toFile())) {
+                    Sheet expectedSheet = expected.getSheetAt(0);
+                    Sheet actualSheet = actual.getSheetAt(0);
+                    // 日期列按格式估算，固定宽度不被估算覆盖
+                    Assertions.assertEquals(20 << 8, expectedSheet.getColumnWidth(4));
+                    Assertions.assertEquals(60 << 8, expectedSheet.getColumnWidth(7));
+                    for (int col = 0; col < 8; col++) {
+                        Assertions.assertEquals(expectedSheet.getColumnWidth(col), actualSheet.getColumnWidth(col));
+                    }
+                }
+            } finally {
+                TempFileOperator.deleteTempFiles(directPaths);
+            }
+        }
+    }
+
+    @Test
+    void writeToOutputStream() throws Exception {
+        try (OutputStream outputStream = Files.newOutputStream(Paths.get(TEST_OUTPUT_DIR + "write_to_output_stream.xlsx"));
+             DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                     .fixedTitles()
+                     .widths(15, 20, 25, 30)
+                     .writeTo(outputStream)
+                     .start()) {
+            data(excelBuilder, 10000);
+            excelBuilder.build();
+        }
+    }
+
+    @Test
+    void memoryBudgetBuild() throws Exception {
+        MemoryBudget memoryBudget = new MemoryBudget(64 * 1024);
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .memoryBudget(memoryBudget)
+                .compressTempFiles()
+                .start()) {
+            data(excelBuilder, 10000);
+            Workbook workbook = excelBuilder.build();
+            FileExportUtil.export(workbook, new File(TEST_OUTPUT_DIR + "memory_budget_build.xlsx"));
+        }
+        System.out.println(memoryBudget.getUsedBytes());
+    }
+
+    @Test
+    void concurrentPartsBuild() throws Exception {
+        List<Path> paths = null;
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .widths(15, 20, 25, 30)
+                .capacity(1000)
+                .concurrentParts(4)
+                .memoryBudget(1024 * 1024)
+                .start()) {
+            data(excelBuilder, 10000);
+            paths = excelBuilder.buildAsPaths();
+            System.out.println(paths.size());
+        } finally {
+            TempFileOperator.deleteTempFiles(paths);
+        }
+    }
+
+    @Test
+    void boundedConcurrentPartsBuild() throws Exception {
+        List<Path> paths = null;
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .capacity(1000)
+                .concurrentParts(4)
+                .waitQueueSize(200)
+                .start()) {
+            for (int i = 0; i < 10; i++) {
+                excelBuilder.append(dataList());
+            }
+            paths = excelBuilder.buildAsPaths();
+            // 每份含两行标题
+            Assertions.assertEquals(11, paths.size());
+        } finally {
+            TempFileOperator.deleteTempFiles(paths);
+        }
+    }
+
+    @Test
+    void asyncBuildAsZip() throws Exception {
+        Path zip = null;
+        try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
+                .fixedTitles()
+                .capacity(1000)
+                .threadPool(Executors.newFixedThreadPool(4))
+                .start()) {
+            data(excelBuilder, 10000);
+            zip = excelBuilder.buildAsZip("test");
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                System.out.println(zipFile.size());
+            }
+        } finally {
+            TempFileOperator.deleteTempFile(zip);
+        }
+    }
+
+    @Test
+    void multiSheetBuild() throws Exception {
+        try (MultiSheetStreamExcelBuilder multiSheetBuilder = MultiSheetStreamExcelBuilder.create()) {
+            DefaultStreamExcelBuilder<CommonPeople> peopleBuilder = multiSheetBuilder.sheet(CommonPeople.class, "人员")
+                    .fixedTitles()
+                    .start();
+            DefaultStreamExcelBuilder<Product> productBuilder = multiSheetBuilder.sheet(Product.class, "产品")
+                    .start();
+            CompletableFuture<Void> productFuture = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    Product product = new Product();
+                    product.setCategory("category" + i % 10);
+                    product.setName("product" + i);
+                    product.setCount(i);
+                    productBuilder.append(product);
+                }
+            });
+            peopleBuilder.append(dataList());
+            productFuture.join();
+            Workbook workbook = multiSheetBuilder.build();
+            Assertions.assertEquals("人员", workbook.getSheetName(0));
+            Assertions.assertEquals("产品", workbook.getSheetName(1));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> productBuilder.capacity(100));
+            Assertions.assertThrows(UnsupportedOperationException.class, productBuilder::directWrite);
+            Assertions.assertThrows(UnsupportedOperationException.class, productBuilder::buildAsPaths);
+            // sheet构建器关闭不影响共享的工作簿
+            productBuilder.close();
+            FileExportUtil.export(workbook, new File(TEST_OUTPUT_DIR + "multi_sheet_build.xlsx"));
+        }
+    }
+
     @Test
     void bigBuild() throws Exception {
         try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
@@ -197,6 +642,37 @@ class DefaultStreamExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    void internedStyleBuild() throws Exception {
+        Map<String, String> style = StyleUtil.parseInternedStyle("color:green;font-weight:bold");
+        Assertions.assertSame(style, StyleUtil.parseInternedStyle("color: green; font-weight: bold;"));
+        Assertions.assertSame(StyleUtil.mixInternedStyle(style, StyleUtil.parseInternedStyle("color:red")),
+                StyleUtil.mixInternedStyle(style, StyleUtil.parseInternedStyle("color:red")));
+        Assertions.assertEquals("red", StyleUtil.mixInternedStyle(style, StyleUtil.parseInternedStyle("color:red")).get("color"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> style.put("color", "red"));
+        Map<String, String> parsed = StyleUtil.parseStyle("color:green;font-weight:bold");
+        parsed.put("color", "red");
+        Assertions.assertEquals("green", StyleUtil.parseStyle("color:green;font-weight:bold").get("color"));
+        StyleUtil.mixStyle(parsed, null).put("font-size", "12");
+        StyleUtil.mixStyle(null, null).put("font-size", "12");
+        // 驻留表清空后，重新驻留的样式仍与既有样式相等
+        for (int i = 0; i < 10000; i++) {
+            StyleUtil.parseInternedStyle("width:" + i);
+        }
+        Map<String, String> reinterned = StyleUtil.parseInternedStyle("color:green;font-weight:bold");
+        Assertions.assertEquals(style, reinterned);
+        Assertions.assertEquals(style.hashCode(), reinterned.hashCode());
+        try (DefaultStreamExcelBuilder<OddEvenStylePeople> excelBuilder = DefaultStreamExcelBuilder.of(OddEvenStylePeople.class)
+                .fixedTitles()
+                .style("cell&1->color:green;")
+                .start()) {
+            oddEvenData(excelBuilder, 1000);
+            Workbook workbook = excelBuilder.build();
+            Assertions.assertTrue(workbook.getNumCellStyles() < 32);
+            FileExportUtil.export(workbook, new File(TEST_OUTPUT_DIR + "interned_style_build.xlsx"));
+        }
+    }
+
     @Test
     void groupBuild() throws Exception {
         try (DefaultStreamExcelBuilder<CommonPeople> excelBuilder = DefaultStreamExcelBuilder.of(CommonPeople.class)
@@ -14,16 +14,28 @@
  */
 package com.github.liaochong.myexcel.core;
 
+import com.github.liaochong.myexcel.core.parser.ParseConfig;
+import com.github.liaochong.myexcel.core.parser.Td;
+import com.github.liaochong.myexcel.core.parser.Tr;
 import com.github.liaochong.myexcel.core.pojo.Product;
+import com.github.liaochong.myexcel.core.strategy.WidthStrategy;
+import com.github.liaochong.myexcel.core.templatehandler.AbstractTemplateHandler;
+import com.github.liaochong.myexcel.core.templatehandler.FreemarkerTemplateHandler;
+import com.github.liaochong.myexcel.core.templatehandler.TemplateHandler;
+import com.github.liaochong.myexcel.core.templatehandler.TemplateRegistry;
+import com.github.liaochong.myexcel.exception.ExcelBuildException;
 import com.github.liaochong.myexcel.utils.FileExportUtil;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * @author liaochong
@@ -49,6 +61,135 @@ class FreemarkerExcelBuilderTest extends BasicTest {
         }
     }
 
+    @Test
+    public void streamParseTest() throws Exception {
+        TemplateHandler templateHandler = new FreemarkerTemplateHandler().classpathTemplate("/templates/freemarkerToExcelExample.ftl");
+        Map<String, Object> dataMap = this.getDataMap();
+        ParseConfig parseConfig = new ParseConfig(WidthStrategy.AUTO_WIDTH);
+        List<Tr> expected = templateHandler.render(dataMap, parseConfig).get(0).getTrList();
+        // 再次渲染时固定行取自缓存
+        for (int n = 0; n < 2; n++) {
+            List<Tr> actual = new ArrayList<>();
+            templateHandler.render(dataMap, parseConfig, actual::addAll);
+            this.assertTrsEqual(expected, actual);
+        }
+    }
+
+    @Test
+    public void multiBatchStreamParseTest() throws Exception {
+        // 输出远超管道容量及单批行数，跨行单元格跨越批次
+        TemplateHandler templateHandler = new AbstractTemplateHandler<Object, Object>() {
+            @Override
+            protected void setTemplateEngine(String dirPath, Supplier<Object> supplier, String fileName) {
+            }
+
+            @Override
+            protected Object getTemplateEngineSupplier(String dirPath) {
+                return null;
+            }
+
+            @Override
+            protected <F> void render(Map<String, F> renderData, Writer out) throws Exception {
+                out.write("<table><thead><tr><th>序号</th><th>名称</th><th>数量</th></tr></thead><tbody>");
+                for (int i = 0; i < 2000; i++) {
+                    out.write("<tr style=\"height: 20px\">");
+                    if (i % 50 == 0) {
+                        out.write("<td rowspan=\"3\">" + i + "</td>");
+                    } else if (i % 50 > 2) {
+                        out.write("<td>" + i + "</td>");
+                    }
+                    out.write("<td style=\"color: red\">名称<span style=\"font-weight: bold\">" + i + "</span></td><td>" + i * 7 + "</td></tr>");
+                }
+                out.write("</tbody></table>");
+            }
+        };
+        ParseConfig parseConfig = new ParseConfig(WidthStrategy.AUTO_WIDTH);
+        Map<String, Object> dataMap = new HashMap<>();
+        List<Tr> expected = templateHandler.render(dataMap, parseConfig).get(0).getTrList();
+        for (int n = 0; n < 5; n++) {
+            List<Tr> actual = new ArrayList<>();
+            List<Integer> batchSizes = new ArrayList<>();
+            templateHandler.render(dataMap, parseConfig, trs -> {
+                batchSizes.add(trs.size());
+                actual.addAll(trs);
+            });
+            Assertions.assertTrue(batchSizes.size() > 10);
+            this.assertTrsEqual(expected, actual);
+        }
+        // 渲染线程复用，不随渲染次数增长
+        long renderThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("myexcel-render-")).count();
+        Assertions.assertTrue(renderThreads <= Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    @Test
+    public void streamParseFailureTest() {
+        TemplateHandler templateHandler = new FreemarkerTemplateHandler().classpathTemplate("/templates/freemarkerToExcelExample.ftl");
+        ParseConfig parseConfig = new ParseConfig(WidthStrategy.AUTO_WIDTH);
+        Assertions.assertThrows(ExcelBuildException.class, () -> templateHandler.render(new HashMap<String, Object>(), parseConfig, trs -> {
+        }));
+        Assertions.assertThrows(IllegalStateException.class, () -> templateHandler.render(this.getDataMap(), parseConfig, trs -> {
+            throw new IllegalStateException("stop");
+        }));
+        // 渲染中途失败，未闭合的行不得被解析
+        TemplateHandler truncatedHandler = new AbstractTemplateHandler<Object, Object>() {
+            @Override
+            protected void setTemplateEngine(String dirPath, Supplier<Object> supplier, String fileName) {
+            }
+
+            @Override
+            protected Object getTemplateEngineSupplier(String dirPath) {
+                return null;
+            }
+
+            @Override
+            protected <F> void render(Map<String, F> renderData, Writer out) throws Exception {
+                out.write("<table><tr><td>1</td></tr><tr><td>2");
+                throw new IllegalStateException("render failure");
+            }
+        };
+        List<Tr> parsedTrs = new ArrayList<>();
+        ExcelBuildException e = Assertions.assertThrows(ExcelBuildException.class,
+                () -> truncatedHandler.render(new HashMap<String, Object>(), parseConfig, parsedTrs::addAll));
+        Assertions.assertEquals("render failure", e.getCause().getMessage());
+        Assertions.assertTrue(parsedTrs.stream().noneMatch(tr -> tr.getTdList().stream().anyMatch(td -> "2".equals(td.getContent()))));
+    }
+
+    @Test
+    public void templateRegistryTest() {
+        TemplateRegistry.precompile(FreemarkerTemplateHandler.class, "/templates/freemarkerToExcelExample.ftl");
+        long hitCount = TemplateRegistry.getHitCount();
+        long missCount = TemplateRegistry.getMissCount();
+        new FreemarkerTemplateHandler().classpathTemplate("/templates/freemarkerToExcelExample.ftl");
+        new FreemarkerTemplateHandler().classpathTemplate("/templates/freemarkerToExcelExample.ftl");
+        Assertions.assertEquals(hitCount + 2, TemplateRegistry.getHitCount());
+        Assertions.assertEquals(missCount, TemplateRegistry.getMissCount());
+    }
+
+    private void assertTrsEqual(List<Tr> expected, List<Tr> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Tr expectedTr = expected.get(i);
+            Tr actualTr = actual.get(i);
+            Assertions.assertEquals(expectedTr.getIndex(), actualTr.getIndex());
+            Assertions.assertEquals(expectedTr.getHeight(), actualTr.getHeight());
+            Assertions.assertEquals(expectedTr.getTdList().size(), actualTr.getTdList().size());
+            for (int j = 0; j < expectedTr.getTdList().size(); j++) {
+                Td expectedTd = expectedTr.getTdList().get(j);
+                Td actualTd = actualTr.getTdList().get(j);
+                Assertions.assertEquals(expectedTd.getContent(), actualTd.getContent());
+                Assertions.assertEquals(expectedTd.getRow(), actualTd.getRow());
+                Assertions.assertEquals(expectedTd.getCol(), actualTd.getCol());
+                Assertions.assertEquals(expectedTd.getColSpan(), actualTd.getColSpan());
+                Assertions.assertEquals(expectedTd.getTdContentType(), actualTd.getTdContentType());
+                Assertions.assertEquals(expectedTd.getStyle(), actualTd.getStyle());
+                Assertions.assertEquals(expectedTd.getRowSpan(), actualTd.getRowSpan());
+                Assertions.assertEquals(expectedTd.getFonts() == null ? 0 : expectedTd.getFonts().size(),
+                        actualTd.getFonts() == null ? 0 : actualTd.getFonts().size());
+            }
+        }
+    }
+
     private Map<String, Object> getDataMap() {
         Map<String, Object> dataMap = new HashMap<>();
         dataMap.put("sheetName", "freemarker_excel_example");
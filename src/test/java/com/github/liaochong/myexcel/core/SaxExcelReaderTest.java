@@ -4,14 +4,20 @@ import com.github.liaochong.myexcel.core.pojo.CommonPeople;
 import com.github.liaochong.myexcel.core.pojo.CsvPeople;
 import com.github.liaochong.myexcel.core.pojo.ExceptionPeople;
 import com.github.liaochong.myexcel.core.pojo.TitlePeople;
+import com.github.liaochong.myexcel.exception.CancelledException;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author liaochong
@@ -63,6 +69,24 @@ class SaxExcelReaderTest {
         }
     }
 
+    @Test
+    void cancelRead() throws Exception {
+        URL htmlToExcelEampleURL = this.getClass().getResource("/common_build.xlsx");
+        Path path = Paths.get(htmlToExcelEampleURL.toURI());
+
+        CancellationToken cancellationToken = new CancellationToken();
+        AtomicInteger count = new AtomicInteger();
+        Assertions.assertThrows(CancelledException.class, () -> SaxExcelReader.of(CommonPeople.class)
+                .rowFilter(row -> row.getRowNum() > 0)
+                .cancellationToken(cancellationToken)
+                .readThen(path.toFile(), commonPeople -> {
+                    if (count.incrementAndGet() == 10) {
+                        cancellationToken.cancel();
+                    }
+                }));
+        Assertions.assertEquals(10, count.get());
+    }
+
     @Test
     void readXlsxFile() throws Exception {
         URL htmlToExcelEampleURL = this.getClass().getResource("/common_build.xlsx");
@@ -272,4 +296,36 @@ class SaxExcelReaderTest {
             System.out.println(d);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void readCsvInputStreamByMagic() throws Exception {
+        this.assertInputStreamReadSameAsFile("/common.csv", FileMagic.UNKNOWN);
+    }
+
+    @Test
+    void readXlsInputStreamByMagic() throws Exception {
+        this.assertInputStreamReadSameAsFile("/common_build.xls", FileMagic.OLE2);
+    }
+
+    @Test
+    void readXlsxInputStreamByMagic() throws Exception {
+        this.assertInputStreamReadSameAsFile("/common_build.xlsx", FileMagic.OOXML);
+    }
+
+    private void assertInputStreamReadSameAsFile(String resource, FileMagic fileMagic) throws Exception {
+        Path path = Paths.get(this.getClass().getResource(resource).toURI());
+        try (InputStream is = FileMagic.prepareToCheckMagic(Files.newInputStream(path))) {
+            Assertions.assertEquals(fileMagic, FileMagic.valueOf(is));
+        }
+        List<Map> expected = SaxExcelReader.of(Map.class).read(path.toFile());
+        List<Map> actual;
+        try (InputStream is = Files.newInputStream(path)) {
+            actual = SaxExcelReader.of(Map.class).read(is);
+        }
+        Assertions.assertFalse(expected.isEmpty());
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(new ArrayList<>(expected.get(i).values()), new ArrayList<>(actual.get(i).values()));
+        }
+    }
+}